@@ -0,0 +1,95 @@
+package hu.kg.runfunctor.bench;
+
+import java.util.Random;
+
+import hu.kg.runfunctor.core.Program;
+
+// Generated knowledge bases and queries for the benchmarks; fixed seeds, so every run sees the same input.
+final class BenchData {
+    private BenchData() {}
+
+    // p(f(X0, ..., Xn-1)), or with "c0" ... as arguments when ground.
+    static String flat(int n, boolean ground) {
+        StringBuilder sb = new StringBuilder("p(f(");
+        for (int i = 0; i < n; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(ground ? "\"c" + i + "\"" : "X" + i);
+        }
+        return sb.append("))").toString();
+    }
+
+    // p(s(s(...s(X)...))) n deep, or ending in "z" when ground.
+    static String deep(int n, boolean ground) {
+        StringBuilder sb = new StringBuilder("p(");
+        for (int i = 0; i < n; i++) sb.append("s(");
+        sb.append(ground ? "\"z\"" : "X");
+        for (int i = 0; i < n; i++) sb.append(')');
+        return sb.append(')').toString();
+    }
+
+    // h(X, Y) :- g(X, Z0), g(Z0, Z1), ..., g(Zn-2, Y): a rule with n body goals.
+    static String rule(int n) {
+        StringBuilder sb = new StringBuilder("h(X, Y) :- ");
+        String prev = "X";
+        for (int i = 0; i < n; i++) {
+            String next = i == n - 1 ? "Y" : "Z" + i;
+            if (i > 0) sb.append(", ");
+            sb.append("g(").append(prev).append(", ").append(next).append(')');
+            prev = next;
+        }
+        return sb.append('.').toString();
+    }
+
+    // Knowledge-base source: facts with strings and things, and rules, one clause per line.
+    static String source(int clauses) {
+        Random rnd = new Random(42);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < clauses; i++) {
+            if (i % 10 == 9) {
+                sb.append("path(X, Y) :- edge(X, Z, W), path(Z, Y), !CONCAT(\"p\", W) -> *label.\n");
+            } else {
+                sb.append("edge(\"n").append(rnd.nextInt(1000)).append("\", \"n").append(rnd.nextInt(1000))
+                  .append("\", @t").append(i).append("@).\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    // Query text of n namespaces (separated by blank lines) that reuse the same variable names.
+    static String namespaces(int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            if (i > 0) sb.append('\n');
+            sb.append("% namespace ").append(i).append('\n');
+            sb.append("ancestor(X, Y), parent(Y, Z), !CONCAT(\"a\", Z) -> *greet.\n");
+            sb.append("edge(A, B, 'quoted X'), edge(B, C, \"string Y\"), path(A, C).\n");
+        }
+        return sb.toString();
+    }
+
+    // parent/2 facts over nodes "n0" ... "n<size-1>" and the ancestor/2 rules. Shapes:
+    // chain (n0 -> n1 -> ...), tree (binary, n0 the root), random (every node below a random
+    // earlier one plus size random edges, cycles included; ancestor/2 is tabled then).
+    static Program ancestors(String shape, int size) {
+        Program program = new Program();
+        Random rnd = new Random(42);
+        for (int i = 1; i < size; i++) {
+            int parent = switch (shape) {
+                case "chain" -> i - 1;
+                case "tree" -> (i - 1) / 2;
+                case "random" -> rnd.nextInt(i);
+                default -> throw new IllegalArgumentException("Unknown shape: " + shape);
+            };
+            program.consult("parent(\"n" + parent + "\", \"n" + i + "\").");
+        }
+        if (shape.equals("random")) {
+            for (int i = 0; i < size; i++) {
+                program.consult("parent(\"n" + rnd.nextInt(size) + "\", \"n" + rnd.nextInt(size) + "\").");
+            }
+            program.consult(":- table ancestor/2.");
+        }
+        program.consult("ancestor(X, Y) :- parent(X, Y).");
+        program.consult("ancestor(X, Y) :- parent(X, Z), ancestor(Z, Y).");
+        return program;
+    }
+}
@@ -0,0 +1,44 @@
+package hu.kg.runfunctor.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import hu.kg.runfunctor.core.BacktrackEnvironment;
+import hu.kg.runfunctor.core.ClauseParser;
+import hu.kg.runfunctor.core.Constant;
+import hu.kg.runfunctor.core.Freshener;
+import hu.kg.runfunctor.core.Functor;
+import hu.kg.runfunctor.core.Term;
+import hu.kg.runfunctor.core.Variable;
+import org.openjdk.jmh.annotations.*;
+
+// BacktrackEnvironment: allocate a frame of size slots at slot 0, bind them all and undo it.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EnvironmentBenchmark {
+    @Param({"8", "128"})
+    int size;
+
+    private final BacktrackEnvironment env = new BacktrackEnvironment();
+    private Variable[] vars;
+    private final Term value = Constant.of("v");
+
+    @Setup
+    public void setup() {
+        List<Term> args = ((Functor) Freshener.compile(ClauseParser.parse(BenchData.flat(size, false))).head().args().get(0)).args();
+        vars = args.toArray(new Variable[0]);
+    }
+
+    @Benchmark
+    public int bindUndo() {
+        int mark = env.mark();
+        int frame = env.allocate(vars.length);
+        for (Variable v : vars) env.bind(v, value);
+        env.undoTo(mark);
+        return frame;
+    }
+}
@@ -0,0 +1,37 @@
+package hu.kg.runfunctor.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import hu.kg.runfunctor.core.BacktrackEnvironment;
+import hu.kg.runfunctor.core.Clause;
+import hu.kg.runfunctor.core.ClauseParser;
+import hu.kg.runfunctor.core.Freshener;
+import org.openjdk.jmh.annotations.*;
+
+// Freshener.freshen (renaming a compiled clause apart into a new frame) of a rule with size body goals.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FreshenBenchmark {
+    @Param({"1", "16"})
+    int size;
+
+    private final BacktrackEnvironment env = new BacktrackEnvironment();
+    private Clause rule;
+
+    @Setup
+    public void setup() {
+        rule = Freshener.compile(ClauseParser.parse(BenchData.rule(size)));
+    }
+
+    @Benchmark
+    public Clause freshen() {
+        int mark = env.mark();
+        Clause c = Freshener.freshen(rule, env);
+        env.undoTo(mark);
+        return c;
+    }
+}
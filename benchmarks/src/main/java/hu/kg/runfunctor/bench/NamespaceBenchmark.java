@@ -0,0 +1,30 @@
+package hu.kg.runfunctor.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import hu.kg.runfunctor.core.Namespace;
+import org.openjdk.jmh.annotations.*;
+
+// Namespace.renameCollidingVariables over a query text of size namespaces that all reuse the same names.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NamespaceBenchmark {
+    @Param({"10", "1000"})
+    int size;
+
+    private String text;
+
+    @Setup
+    public void setup() {
+        text = BenchData.namespaces(size);
+    }
+
+    @Benchmark
+    public String rename() {
+        return Namespace.renameCollidingVariables(text);
+    }
+}
@@ -0,0 +1,52 @@
+package hu.kg.runfunctor.bench;
+
+import java.nio.CharBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import hu.kg.runfunctor.core.ClauseParser;
+import hu.kg.runfunctor.core.Program;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Reading a generated knowledge base of size clauses: parsing it line by line as Main did, and
+ * parsing it whole into a Program from a String and from a CharBuffer (as a mapped file is read).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParseBenchmark {
+    @Param({"1000", "10000"})
+    int size;
+
+    private String source;
+    private CharBuffer buffer;
+    private List<String> lines;
+
+    @Setup
+    public void setup() {
+        source = BenchData.source(size);
+        buffer = CharBuffer.wrap(source.toCharArray());
+        lines = source.lines().toList(); // one clause per line, no comments
+    }
+
+    @Benchmark
+    public int parseLines() {
+        int n = 0;
+        for (String line : lines) n += ClauseParser.parse(line).body().size();
+        return n;
+    }
+
+    @Benchmark
+    public int parseAll() {
+        return ClauseParser.parseAll(source, new Program());
+    }
+
+    @Benchmark
+    public int parseAllBuffer() {
+        return ClauseParser.parseAll(buffer.duplicate(), new Program());
+    }
+}
@@ -0,0 +1,48 @@
+package hu.kg.runfunctor.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import hu.kg.runfunctor.core.BodyElement;
+import hu.kg.runfunctor.core.Builtins;
+import hu.kg.runfunctor.core.Program;
+import hu.kg.runfunctor.core.QueryParser;
+import hu.kg.runfunctor.core.Solver;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Solver.solve of ancestor("n0", Y) over generated parent/2 graphs (see BenchData.ancestors),
+ * counting all solutions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SolveBenchmark {
+    @Param({"chain", "tree", "random"})
+    String shape;
+
+    @Param({"100", "1000"})
+    int size;
+
+    private Solver solver;
+    private List<BodyElement> query;
+
+    @Setup
+    public void setup() {
+        Program program = BenchData.ancestors(shape, size);
+        Builtins builtins = new Builtins();
+        program.link(builtins);
+        solver = new Solver(program, builtins);
+        query = QueryParser.parse("ancestor(\"n0\", Y).");
+    }
+
+    @Benchmark
+    public int solve() {
+        int[] count = new int[1];
+        solver.solve(query, solution -> count[0]++);
+        return count[0];
+    }
+}
@@ -0,0 +1,58 @@
+package hu.kg.runfunctor.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import hu.kg.runfunctor.core.BacktrackEnvironment;
+import hu.kg.runfunctor.core.Clause;
+import hu.kg.runfunctor.core.ClauseParser;
+import hu.kg.runfunctor.core.Freshener;
+import hu.kg.runfunctor.core.Term;
+import hu.kg.runfunctor.core.Unifier;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Unifier.unify of a compiled clause head against a ground term, undoing the bindings after
+ * each one: flat (one functor of size arguments) and deep (size nested functors). The head's
+ * variables live in a frame at slot 0 of an otherwise empty environment, so the public
+ * frame-free unify reads them as a call reads a clause through its frame.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UnifyBenchmark {
+    @Param({"4", "64"})
+    int size;
+
+    private final BacktrackEnvironment env = new BacktrackEnvironment();
+    private Clause flatPattern, deepPattern;
+    private Term flatValue, deepValue;
+
+    @Setup
+    public void setup() {
+        flatPattern = Freshener.compile(ClauseParser.parse(BenchData.flat(size, false)));
+        flatValue = ClauseParser.parse(BenchData.flat(size, true)).head();
+        deepPattern = Freshener.compile(ClauseParser.parse(BenchData.deep(size, false)));
+        deepValue = ClauseParser.parse(BenchData.deep(size, true)).head();
+    }
+
+    @Benchmark
+    public boolean flat() {
+        return unifyAndUndo(flatPattern, flatValue);
+    }
+
+    @Benchmark
+    public boolean deep() {
+        return unifyAndUndo(deepPattern, deepValue);
+    }
+
+    private boolean unifyAndUndo(Clause pattern, Term value) {
+        int mark = env.mark();
+        env.allocate(size); // at slot 0: no pattern has more than size variables
+        boolean ok = Unifier.unify(pattern.head(), value, env);
+        env.undoTo(mark);
+        return ok;
+    }
+}
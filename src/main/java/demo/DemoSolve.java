@@ -39,9 +39,8 @@ public final class DemoSolve {
         System.out.println("Query: " + qsrc);
         System.out.println("Solutions:");
         solver.solve(query, solution -> {
-            Map<String, Term> visible = Solver.filterQueryVars(solution);
             List<String> parts = new ArrayList<>();
-            for (Map.Entry<String, Term> e : visible.entrySet()) {
+            for (Map.Entry<String, Term> e : solution.entrySet()) {
                 parts.add(e.getKey() + "=" + e.getValue().toSource());
             }
             System.out.println("  {" + String.join(", ", parts) + "}");
@@ -51,9 +50,8 @@ public final class DemoSolve {
         String q2 = "!NEW()->*t, !CONCAT(@id:@, *t)->idStr.";
         System.out.println("\nQuery: " + q2);
         solver.solve(QueryParser.parse(q2), solution -> {
-            Map<String, Term> visible = Solver.filterQueryVars(solution);
             List<String> parts = new ArrayList<>();
-            for (Map.Entry<String, Term> e : visible.entrySet()) {
+            for (Map.Entry<String, Term> e : solution.entrySet()) {
                 parts.add(e.getKey() + "=" + e.getValue().toSource());
             }
             System.out.println("  {" + String.join(", ", parts) + "}");
@@ -4,70 +4,209 @@ import java.util.*;
 
 /**
  * A backtrackable binding environment.
- * Records changes on a trail so they can be undone to a choicepoint mark.
+ * Variables are addressed by slot: compiled clauses reserve a contiguous frame of slots
+ * with allocate(), and bindings live in a growable array indexed by slot.
+ * Clause terms are shared, not copied: a clause variable with slot i in an activation
+ * at frame f lives in slot f+i. Values stored in slots are always frame-free (absolute) terms,
+ * so a clause term is instantiated only when it escapes into a binding.
+ * Records changes on a trail so they can be undone to a choicepoint mark;
+ * undoing a frame allocation releases its slots again.
+ * A solver may set a boundary slot (the first free slot when its newest choicepoint was made):
+ * slots at or above it are discarded wholesale on backtracking, so their bindings and
+ * allocations are not trailed, and the solver releases them itself.
  */
 public class BacktrackEnvironment extends BindingEnvironment {
-    private final Map<String, Term> map = new HashMap<>();
-    private final ArrayDeque<TrailEntry> trail = new ArrayDeque<>();
+    private Term[] cells;
+    private Variable[] owners; // variable bound in each slot, for naming
+    private Variable[] vars;   // absolute variable objects, created on demand
+    private int top; // first free slot
+    private int boundary = Integer.MAX_VALUE; // slots from here on are not trailed
+    private OccursCheck occursCheck = OccursCheck.FULL; // mode of the unifications done on this environment
 
-    private static final class TrailEntry {
-        final String varName;
-        final Term previous; // null means previously unbound
+    // Trail entries: a slot and its previous value (null means previously unbound),
+    // or a negative slot -1-base recording a frame allocated at base.
+    private int[] trailSlots = new int[64];
+    private Term[] trailValues = new Term[64];
+    private int trailTop;
 
-        TrailEntry(String varName, Term previous) {
-            this.varName = varName;
-            this.previous = previous;
-        }
+    public BacktrackEnvironment() {
+        this.cells = new Term[64];
+        this.owners = new Variable[64];
+        this.vars = new Variable[64];
+    }
+
+    // Independent copy of the current bindings with an empty trail: the copy cannot backtrack
+    // past this point. Used to hand a branch of the search to another thread.
+    private BacktrackEnvironment(BacktrackEnvironment from) {
+        int cap = Math.max(from.top, 64);
+        this.cells = Arrays.copyOf(from.cells, cap);
+        this.owners = Arrays.copyOf(from.owners, cap);
+        this.vars = Arrays.copyOf(from.vars, cap);
+        this.top = from.top;
+        this.occursCheck = from.occursCheck;
+    }
+
+    public BacktrackEnvironment copy() {
+        return new BacktrackEnvironment(this);
     }
 
     public int mark() {
-        return trail.size();
+        return trailTop;
     }
 
     public void undoTo(int mark) {
-        while (trail.size() > mark) {
-            TrailEntry e = trail.removeLast();
-            if (e.previous == null) {
-                map.remove(e.varName);
+        while (trailTop > mark) {
+            trailTop--;
+            int s = trailSlots[trailTop];
+            Term previous = trailValues[trailTop];
+            trailValues[trailTop] = null;
+            if (s < 0) {
+                top = -1 - s;
             } else {
-                map.put(e.varName, e.previous);
+                cells[s] = previous;
+                if (previous == null) owners[s] = null;
             }
         }
     }
 
+    // Reserves n consecutive slots and returns the first one.
+    public int allocate(int n) {
+        int base = top;
+        if (base < boundary) push(-1 - base, null);
+        top += n;
+        if (top > cells.length) {
+            int cap = Math.max(top, cells.length * 2);
+            cells = Arrays.copyOf(cells, cap);
+            owners = Arrays.copyOf(owners, cap);
+            vars = Arrays.copyOf(vars, cap);
+        }
+        // Untrailed slots may still hold values from a discarded branch.
+        Arrays.fill(cells, base, top, null);
+        Arrays.fill(owners, base, top, null);
+        Arrays.fill(vars, base, top, null);
+        return base;
+    }
+
+    int top() {
+        return top;
+    }
+
+    // Frees the slots from top on, which the trail does not cover (see boundary).
+    void release(int top) {
+        if (top < this.top) this.top = top;
+    }
+
+    void setBoundary(int boundary) {
+        this.boundary = boundary;
+    }
+
+    public OccursCheck occursCheck() {
+        return occursCheck;
+    }
+
+    public void setOccursCheck(OccursCheck occursCheck) {
+        this.occursCheck = Objects.requireNonNull(occursCheck);
+    }
+
     @Override
     public Term get(Variable v) {
-        return map.get(v.name());
+        return cells[slotOf(v)];
+    }
+
+    @Override
+    Term get(Variable v, int frame) {
+        return cells[frame + v.slot()];
+    }
+
+    Term cell(int slot) {
+        return cells[slot];
+    }
+
+    // The frame-free variable standing for slot, named after the clause variable v.
+    Variable var(int slot, Variable v) {
+        Variable a = vars[slot];
+        if (a == null) {
+            a = v.slot() == slot ? v : new Variable(v.name(), slot, true);
+            vars[slot] = a;
+        }
+        return a;
+    }
+
+    // Copies a clause term read through frame into a frame-free term.
+    // Bound variables are replaced by their values; ground subterms are shared.
+    Term instantiate(Term t, int frame) {
+        if (frame == 0 || t.isGround()) return t;
+        if (t instanceof Variable v) {
+            int s = frame + v.slot();
+            Term b = cells[s];
+            return b != null ? b : var(s, v);
+        } else if (t instanceof Functor f) {
+            List<Term> args = f.args();
+            List<Term> copy = null;
+            for (int i = 0; i < args.size(); i++) {
+                Term a = args.get(i);
+                Term c = instantiate(a, frame);
+                if (c != a && copy == null) {
+                    copy = new ArrayList<>(args.size());
+                    copy.addAll(args.subList(0, i));
+                }
+                if (copy != null) copy.add(c);
+            }
+            return copy == null ? f : f.withArgs(copy);
+        } else {
+            return t;
+        }
+    }
+
+    // Fully resolved value of a clause term read through frame.
+    Term resolve(Term t, int frame) {
+        return instantiate(t, frame).resolve(this);
     }
 
     @Override
     public boolean isBound(Variable v) {
-        return map.containsKey(v.name());
+        return cells[slotOf(v)] != null;
     }
 
     @Override
     public void bind(Variable v, Term value) {
-        bindInternal(v, value, false);
+        bindSlot(slotOf(v), v, value, false);
     }
 
     @Override
     public void bindFromRunnable(Variable v, Term value) {
-        bindInternal(v, value, true);
+        assign(slotOf(v), v, value);
+    }
+
+    // Binds a runnable's target (variable v in slot s). A target aliased to another variable
+    // binds the end of that chain; only a target bound to a value is subject to overriding.
+    void assign(int s, Variable v, Term value) {
+        Variable end = v;
+        while (cells[s] instanceof Variable alias) {
+            end = alias;
+            s = alias.slot();
+        }
+        if (cells[s] == null) {
+            bindSlot(s, end, value, false);
+        } else {
+            bindSlot(s, v, value, v.isOverrideable());
+        }
     }
 
-    private void bindInternal(Variable v, Term value, boolean fromRunnable) {
+    // v names the variable in slot s (it may be the frame-relative clause variable).
+    void bindSlot(int s, Variable v, Term value, boolean override) {
         Objects.requireNonNull(v);
         Objects.requireNonNull(value);
-        String key = v.name();
-        Term existing = map.get(key);
+        Term existing = cells[s];
         if (existing == null) {
-            trail.addLast(new TrailEntry(key, null));
-            map.put(key, value);
+            if (s < boundary) push(s, null);
+            cells[s] = value;
+            owners[s] = v;
             return;
         }
-        if (fromRunnable && v.isOverrideable()) {
-            trail.addLast(new TrailEntry(key, existing));
-            map.put(key, value);
+        if (override) {
+            if (s < boundary) push(s, existing);
+            cells[s] = value;
             return;
         }
         if (existing.equals(value)) {
@@ -76,10 +215,38 @@ public class BacktrackEnvironment extends BindingEnvironment {
         throw new RuntimeException("Variable " + v.name() + " is already bound and not overrideable: " + existing + " vs " + value);
     }
 
+    private int slotOf(Variable v) {
+        int s = v.slot();
+        if (s < 0 || s >= top) {
+            throw new IllegalArgumentException("Variable " + v.name() + " has no slot in this environment");
+        }
+        return s;
+    }
+
+    private void push(int slot, Term previous) {
+        if (trailTop == trailSlots.length) {
+            trailSlots = Arrays.copyOf(trailSlots, trailTop * 2);
+            trailValues = Arrays.copyOf(trailValues, trailTop * 2);
+        }
+        trailSlots[trailTop] = slot;
+        trailValues[trailTop] = previous;
+        trailTop++;
+    }
+
+    // Resolved values of the given (query) variables that are bound, keyed by name.
+    public Map<String, Term> snapshotResolved(List<Variable> vars) {
+        LinkedHashMap<String, Term> out = new LinkedHashMap<>();
+        for (Variable v : vars) {
+            Term t = cells[slotOf(v)];
+            if (t != null) out.put(v.name(), t.resolve(this));
+        }
+        return out;
+    }
+
     public Map<String, Term> snapshotResolved() {
         LinkedHashMap<String, Term> out = new LinkedHashMap<>();
-        for (Map.Entry<String, Term> e : map.entrySet()) {
-            out.put(e.getKey(), e.getValue().resolve(this));
+        for (int s = 0; s < top; s++) {
+            if (cells[s] != null) out.put(var(s, owners[s]).toSource(), cells[s].resolve(this));
         }
         return out;
     }
@@ -89,5 +256,3 @@ public class BacktrackEnvironment extends BindingEnvironment {
         return snapshotResolved().toString();
     }
 }
-
-
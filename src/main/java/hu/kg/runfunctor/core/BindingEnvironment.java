@@ -9,6 +9,11 @@ public class BindingEnvironment {
         return bindings.get(v.name());
     }
 
+    // Binding of a clause variable read through an activation frame; plain environments have no frames.
+    Term get(Variable v, int frame) {
+        return get(v);
+    }
+
     public boolean isBound(Variable v) {
         return bindings.containsKey(v.name());
     }
@@ -32,13 +32,13 @@ public class Builtins {
                     throw new RuntimeException("CONCAT only supports Constant or Thing args, got: " + t);
                 }
             }
-            return new Constant(sb.toString());
+            return new Constant(sb.toString()); // not interned: the symbol table would keep every result
         });
 
         // !NEW() -> Variable
         register("NEW", (args, env) -> {
             if (!args.isEmpty()) throw new RuntimeException("NEW takes no arguments");
-            return Thing.newRandom();
+            return Thing.fresh();
         });
     }
 }
@@ -5,10 +5,22 @@ import java.util.*;
 public class Clause {
     private final Functor head;
     private final List<BodyElement> body;
+    private final int varCount; // number of variable slots, -1 until compiled
+    private final int[] segments; // independent runs of the body, see Freshener.segments
+    private HeadMatcher matcher;  // generated head unification, null while interpreted
+    private Program linkedIn;     // program whose link() resolved the body, if any
+    private Object[] links;       // per body element: its Predicate or BuiltinFunction, or null
+    private OccursCheck occursCheck; // overrides the query's mode for this head, null if not set
 
     public Clause(Functor head, List<BodyElement> body) {
+        this(head, body, -1, null);
+    }
+
+    Clause(Functor head, List<BodyElement> body, int varCount, int[] segments) {
         this.head = Objects.requireNonNull(head);
         this.body = List.copyOf(body);
+        this.varCount = varCount;
+        this.segments = segments;
     }
 
     public Functor head() {
@@ -19,6 +31,57 @@ public class Clause {
         return body;
     }
 
+    int varCount() {
+        return varCount;
+    }
+
+    int[] segments() {
+        return segments;
+    }
+
+    HeadMatcher matcher() {
+        return matcher;
+    }
+
+    void setMatcher(HeadMatcher matcher) {
+        this.matcher = matcher;
+    }
+
+    void setLinks(Program program, Object[] links) {
+        this.linkedIn = program;
+        this.links = links;
+    }
+
+    void setOccursCheck(OccursCheck occursCheck) {
+        this.occursCheck = occursCheck;
+    }
+
+    // Link targets of the body as resolved in program, or null if it was not linked there.
+    Object[] links(Program program) {
+        return linkedIn == program ? links : null;
+    }
+
+    // Unifies goal (read through goalFrame) with this clause's head activated at frame.
+    boolean unifyHead(Functor goal, int goalFrame, int frame, BacktrackEnvironment env) {
+        OccursCheck mode = env.occursCheck();
+        if (occursCheck == null || occursCheck == mode) return unify(goal, goalFrame, frame, env);
+        env.setOccursCheck(occursCheck);
+        try {
+            return unify(goal, goalFrame, frame, env);
+        } finally {
+            env.setOccursCheck(mode);
+        }
+    }
+
+    private boolean unify(Functor goal, int goalFrame, int frame, BacktrackEnvironment env) {
+        if (matcher != null) return matcher.unify(goal, goalFrame, frame, env);
+        return Unifier.unify(goal, goalFrame, head, frame, env);
+    }
+
+    boolean isCompiled() {
+        return varCount >= 0;
+    }
+
     public void evaluateBody(BindingEnvironment env, Builtins builtins) {
         for (BodyElement be : body) {
             if (be.isRunnable()) {
@@ -1,19 +1,111 @@
 package hu.kg.runfunctor.core;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 
 public final class ClauseParser {
     private final Lexer lex;
-    private Token la;
+    private final boolean whole; // reading many clauses from one text
+    private final Path base;     // directory that directive file names are relative to, null for the working directory
 
-    private ClauseParser(String input) {
+    private ClauseParser(CharSequence input, boolean whole, Path base) {
         this.lex = new Lexer(input);
-        this.la = lex.next();
+        this.whole = whole;
+        this.base = base;
+        lex.next();
     }
 
     public static Clause parse(String input) {
-        return new ClauseParser(input).parseClause();
+        return new ClauseParser(input, false, null).parseClause();
+    }
+
+    public static boolean isDirective(String input) {
+        return input.stripLeading().startsWith(":-");
+    }
+
+    // Reads all clauses and directives of a knowledge-base text in one pass, without splitting it
+    // into lines first; clauses are told apart by their dots (or by a name following a complete
+    // clause). Returns the number of clauses and directives read.
+    public static int parseAll(CharSequence source, Program program) {
+        return parseAll(source, program, null);
+    }
+
+    // base: the directory relative file names in directives are resolved against (null: the working directory).
+    public static int parseAll(CharSequence source, Program program, Path base) {
+        ClauseParser p = new ClauseParser(source, true, base);
+        int n = 0;
+        while (p.lex.type() != TokType.EOF) {
+            if (p.lex.type() == TokType.MINUS) p.parseDirectiveInto(program);
+            else program.add(p.parseClause());
+            n++;
+        }
+        return n;
+    }
+
+    // parseAll over a UTF-8 file, memory-mapped and decoded into one CharBuffer.
+    // Files named in its directives are looked up next to it.
+    public static int parseFile(Path file, Program program) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size > Integer.MAX_VALUE) throw new IOException(file + " is too large to map (" + size + " bytes)");
+            CharBuffer text = StandardCharsets.UTF_8.decode(ch.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            return parseAll(text, program, file.getParent());
+        }
+    }
+
+    // ":- table name/arity, name/arity." marks predicates for tabled evaluation;
+    // ":- relation name/arity \"file.csv\" [header]." loads a CSV/TSV file as a fact relation;
+    // a relative file name is resolved against base, the knowledge base's directory, if given.
+    public static void parseDirective(String input, Program program) {
+        parseDirective(input, program, null);
+    }
+
+    public static void parseDirective(String input, Program program, Path base) {
+        new ClauseParser(input, false, base).parseDirectiveInto(program);
+    }
+
+    private void parseDirectiveInto(Program program) {
+        expect(":-");
+        String directive = expectName("directive name");
+        if (directive.equals("table")) {
+            do {
+                String name = expectName("predicate name");
+                expect("/");
+                program.table(name, expectArity());
+            } while (accept(","));
+        } else if (directive.equals("relation")) {
+            String name = expectName("relation name");
+            expect("/");
+            int arity = expectArity();
+            if (lex.type() != TokType.STRING) throw err("Expected file name, got: " + lex);
+            Path file = base == null ? Path.of(lex.text()) : base.resolve(lex.text());
+            consume();
+            boolean header = lex.is("header");
+            if (header) consume();
+            try {
+                program.relation(name, arity).load(file, header);
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Cannot load " + file, ex);
+            }
+        } else {
+            throw err("Unknown directive: " + directive);
+        }
+        accept(".");
+        if (!whole && lex.type() != TokType.EOF) throw err("Unexpected input after directive: " + lex);
+    }
+
+    private int expectArity() {
+        if (lex.type() != TokType.NUMBER) throw err("Expected arity, got: " + lex);
+        int arity = Integer.parseInt(lex.text());
+        consume();
+        return arity;
     }
 
     private Clause parseClause() {
@@ -31,6 +123,7 @@ public final class ClauseParser {
 
     private BodyElement parseBodyElement() {
         if (acceptBang()) {
+            if (lex.type() != TokType.NAME) return Cut.INSTANCE; // a lone '!' is a cut
             String name = expectName("builtin name after '!'");
             expect("(");
             List<Term> args = new ArrayList<>();
@@ -43,11 +136,44 @@ public final class ClauseParser {
             expect("->");
             Variable var = parseVariableFromName(expectName("variable after '->'"));
             return new RunnableAssignment(name, args, var);
+        } else if (accept("(")) {
+            List<BodyElement> goals = parseAlternatives();
+            expect(")");
+            if (goals.size() != 1) throw err("Expected '->' or ';' in parenthesized goals");
+            return goals.get(0);
+        } else if (lex.is("once")) {
+            consume();
+            expect("(");
+            List<BodyElement> goals = parseConjunction();
+            expect(")");
+            return new Once(goals);
         } else {
             return parseFunctor();
         }
     }
 
+    private List<BodyElement> parseConjunction() {
+        List<BodyElement> goals = new ArrayList<>();
+        do {
+            goals.add(parseBodyElement());
+        } while (accept(","));
+        return goals;
+    }
+
+    // "C -> T ; E", "A ; B" or a plain conjunction; a trailing else may chain further if-then-elses.
+    private List<BodyElement> parseAlternatives() {
+        List<BodyElement> first = parseConjunction();
+        if (accept("->")) {
+            List<BodyElement> then = parseConjunction();
+            List<BodyElement> otherwise = accept(";") ? parseAlternatives() : null;
+            return List.of(new IfThenElse(first, then, otherwise));
+        }
+        if (accept(";")) {
+            return List.of(new Disjunction(first, parseAlternatives()));
+        }
+        return first;
+    }
+
     private Functor parseFunctor() {
         String name = expectName("functor name");
         expect("(");
@@ -62,17 +188,17 @@ public final class ClauseParser {
     }
 
     private Term parseTerm() {
-        if (la.type == TokType.STRING) {
-            String v = la.text;
+        if (lex.type() == TokType.STRING) {
+            String v = lex.text();
             consume();
-            return new Constant(v);
-        } else if (la.type == TokType.THING) {
-            String v = la.text;
+            return Constant.of(v);
+        } else if (lex.type() == TokType.THING) {
+            String v = lex.text();
             consume();
-            return new Thing(v);
-        } else if (la.type == TokType.NAME) {
+            return Thing.of(v);
+        } else if (lex.type() == TokType.NAME) {
             // Could be a nested functor or a variable
-            String name = la.text;
+            String name = lex.text();
             consume();
             if (accept("(")) {
                 List<Term> args = new ArrayList<>();
@@ -82,12 +208,12 @@ public final class ClauseParser {
                     } while (accept(","));
                     expect(")");
                 }
-                return new Functor(name, args);
+                return Symbols.compound(new Functor(name, args));
             } else {
                 return parseVariableFromName(name);
             }
         } else {
-            throw err("Expected term, got: " + la);
+            throw err("Expected term, got: " + lex);
         }
     }
 
@@ -98,44 +224,45 @@ public final class ClauseParser {
 
     // Helpers
     private boolean accept(String sym) {
-        if (sym.equals(":-") && la.type == TokType.MINUS && ":-".equals(la.text)) {
+        if (sym.equals(":-") && lex.type() == TokType.MINUS) {
             consume();
             return true;
         }
-        if (sym.equals("->") && la.type == TokType.ARROW) {
+        if (sym.equals("->") && lex.type() == TokType.ARROW) {
             consume();
             return true;
         }
-        if (sym.equals("(") && la.type == TokType.LPAREN) { consume(); return true; }
-        if (sym.equals(")") && la.type == TokType.RPAREN) { consume(); return true; }
-        if (sym.equals(",") && la.type == TokType.COMMA) { consume(); return true; }
-        if (sym.equals(".") && la.type == TokType.DOT) { consume(); return true; }
+        if (sym.equals("(") && lex.type() == TokType.LPAREN) { consume(); return true; }
+        if (sym.equals(")") && lex.type() == TokType.RPAREN) { consume(); return true; }
+        if (sym.equals(",") && lex.type() == TokType.COMMA) { consume(); return true; }
+        if (sym.equals(".") && lex.type() == TokType.DOT) { consume(); return true; }
+        if (sym.equals("/") && lex.type() == TokType.SLASH) { consume(); return true; }
+        if (sym.equals(";") && lex.type() == TokType.SEMI) { consume(); return true; }
         return false;
     }
 
     private boolean acceptBang() {
-        if (la.type == TokType.BANG) { consume(); return true; }
+        if (lex.type() == TokType.BANG) { consume(); return true; }
         return false;
     }
 
     private void expect(String sym) {
-        if (!accept(sym)) throw err("Expected '" + sym + "', got: " + la);
+        if (!accept(sym)) throw err("Expected '" + sym + "', got: " + lex);
     }
 
     private String expectName(String ctx) {
-        if (la.type != TokType.NAME) throw err("Expected " + ctx + ", got: " + la);
-        String n = la.text;
+        if (lex.type() != TokType.NAME) throw err("Expected " + ctx + ", got: " + lex);
+        String n = lex.text();
         consume();
         return n;
     }
 
     private void consume() {
-        la = lex.next();
+        lex.next();
     }
 
     private RuntimeException err(String msg) {
-        return new RuntimeException("Parse error: " + msg);
-
+        return new RuntimeException("Parse error: " + msg + (whole ? " (line " + lex.line() + ")" : ""));
     }
 }
 
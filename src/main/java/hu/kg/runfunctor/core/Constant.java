@@ -4,9 +4,24 @@ import java.util.Objects;
 
 public final class Constant implements Term {
     private final String value;
+    private final int id; // symbol id if interned, else -1
 
+    // Uninterned instance; use of() for the canonical one.
     public Constant(String value) {
+        this(value, -1);
+    }
+
+    Constant(String value, int id) {
         this.value = Objects.requireNonNull(value);
+        this.id = id;
+    }
+
+    public static Constant of(String value) {
+        return Symbols.constant(value);
+    }
+
+    public int id() {
+        return id;
     }
 
     public String value() {
@@ -18,6 +33,11 @@ public final class Constant implements Term {
         return this;
     }
 
+    @Override
+    public boolean isGround() {
+        return true;
+    }
+
     @Override
     public String toSource() {
         return "\"" + Util.escapeString(value) + "\"";
@@ -30,7 +50,10 @@ public final class Constant implements Term {
 
     @Override
     public boolean equals(Object o) {
-        return (o instanceof Constant c) && c.value.equals(this.value);
+        if (o == this) return true;
+        if (!(o instanceof Constant c)) return false;
+        if (id >= 0 && c.id >= 0) return false; // two interned instances are equal only if identical
+        return c.value.equals(this.value);
     }
 
     @Override
@@ -0,0 +1,45 @@
+package hu.kg.runfunctor.core;
+
+import java.util.List;
+
+// The cut "!" (a '!' not followed by a builtin name): commits the clause to the choices made
+// since it was called, discarding the remaining alternatives of the goals before it and of the clause itself.
+public final class Cut implements BodyElement {
+    public static final Cut INSTANCE = new Cut();
+
+    private Cut() {}
+
+    // True if body cuts its clause: directly, or in a branch of an if-then-else or disjunction.
+    // Cuts inside once(...) or an if-then-else condition are local to them.
+    static boolean occursIn(List<BodyElement> body) {
+        for (BodyElement be : body) {
+            if (be instanceof Cut) return true;
+            if (be instanceof IfThenElse ite) {
+                if (occursIn(ite.then())) return true;
+                if (ite.otherwise() != null && occursIn(ite.otherwise())) return true;
+            }
+            if (be instanceof Disjunction d && (occursIn(d.left()) || occursIn(d.right()))) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isRunnable() {
+        return false;
+    }
+
+    @Override
+    public void execute(BindingEnvironment env, Builtins builtins) {
+        throw new IllegalStateException("A cut is executed by the solver");
+    }
+
+    @Override
+    public String toSource() {
+        return "!";
+    }
+
+    @Override
+    public String toString() {
+        return toSource();
+    }
+}
@@ -0,0 +1,43 @@
+package hu.kg.runfunctor.core;
+
+import java.util.List;
+import java.util.Objects;
+
+// ( A ; B ): the solutions of A, then those of B.
+public final class Disjunction implements BodyElement {
+    private final List<BodyElement> left;
+    private final List<BodyElement> right;
+
+    public Disjunction(List<BodyElement> left, List<BodyElement> right) {
+        this.left = List.copyOf(Objects.requireNonNull(left));
+        this.right = List.copyOf(Objects.requireNonNull(right));
+    }
+
+    public List<BodyElement> left() {
+        return left;
+    }
+
+    public List<BodyElement> right() {
+        return right;
+    }
+
+    @Override
+    public boolean isRunnable() {
+        return false;
+    }
+
+    @Override
+    public void execute(BindingEnvironment env, Builtins builtins) {
+        throw new IllegalStateException("A disjunction is executed by the solver");
+    }
+
+    @Override
+    public String toSource() {
+        return "(" + IfThenElse.toSource(left) + " ; " + IfThenElse.toSource(right) + ")";
+    }
+
+    @Override
+    public String toString() {
+        return toSource();
+    }
+}
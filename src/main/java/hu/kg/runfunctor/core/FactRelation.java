@@ -0,0 +1,300 @@
+package hu.kg.runfunctor.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A predicate made of ground atomic facts, stored by column instead of as clauses.
+ * Every distinct value gets a dictionary code and each argument position is one int array of
+ * codes, so a row costs 4 bytes per argument; values are turned back into terms only when a call
+ * binds a variable to them, and those terms are the dictionary's own (interned) instances.
+ * Calls are answered by scanning the rows or, for a bound argument, through a per-column
+ * index built the first time that argument is bound in a call (rows grouped by code).
+ * Rows are read from CSV or TSV files with load(), or added one by one with add().
+ * Loading while a query runs on the relation is not supported.
+ */
+public final class FactRelation {
+    static final int FREE = -1; // selection code of an argument that is an unbound variable
+
+    private final String name;
+    private final int arity;
+    private final Map<Term, Integer> codes = new HashMap<>();
+    private final List<Term> values = new ArrayList<>(); // by code
+    private int[][] columns;
+    private int size;
+    private volatile ColumnIndex[] indexes;
+    private boolean indexed; // some index is built (and must be dropped when rows are added)
+
+    FactRelation(String name, int arity) {
+        this.name = name;
+        this.arity = arity;
+        this.columns = new int[arity][16];
+        this.indexes = new ColumnIndex[arity];
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int arity() {
+        return arity;
+    }
+
+    // Number of rows.
+    public int size() {
+        return size;
+    }
+
+    // Number of distinct values over all columns.
+    public int distinctValues() {
+        return values.size();
+    }
+
+    // Adds one row of Constants and Things.
+    public synchronized void add(Term... row) {
+        if (row.length != arity) {
+            throw new IllegalArgumentException(name + "/" + arity + " takes " + arity + " values, got " + row.length);
+        }
+        int[] encoded = new int[arity];
+        for (int i = 0; i < arity; i++) {
+            if (!(row[i] instanceof Constant || row[i] instanceof Thing)) {
+                throw new IllegalArgumentException("Relation " + name + "/" + arity + " holds atoms only: " + row[i]);
+            }
+            encoded[i] = encode(row[i]);
+        }
+        append(encoded);
+    }
+
+    // Loads a file, comma- or tab-separated by its extension (.tsv or .tab for tabs).
+    public int load(Path file, boolean header) throws IOException {
+        String f = file.getFileName().toString().toLowerCase();
+        char separator = f.endsWith(".tsv") || f.endsWith(".tab") ? '\t' : ',';
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return load(in, separator, header);
+        }
+    }
+
+    // Loads separated rows, each field becoming a Constant; returns the number of rows added.
+    // Fields may be double-quoted (RFC 4180), with "" for a quote inside; blank lines are skipped.
+    public synchronized int load(Reader in, char separator, boolean header) throws IOException {
+        Reader r = in instanceof BufferedReader ? in : new BufferedReader(in, 1 << 16);
+        StringBuilder field = new StringBuilder();
+        int[] row = new int[arity];
+        int before = size;
+        int n = 0;       // fields in the current row
+        int line = 1;
+        boolean skip = header;
+        boolean quoted = false, wasQuoted = false;
+        int c = r.read();
+        while (c >= 0) {
+            if (quoted) {
+                if (c == '"') {
+                    c = r.read();
+                    if (c != '"') {
+                        quoted = false;
+                        continue;
+                    }
+                }
+                if (c == '\n') line++;
+                field.append((char) c);
+            } else if (c == '"' && field.length() == 0 && !wasQuoted) {
+                quoted = wasQuoted = true;
+            } else if (c == separator || c == '\n') {
+                boolean blank = c == '\n' && n == 0 && field.length() == 0 && !wasQuoted;
+                if (!blank && !skip) {
+                    if (n == arity) throw new RuntimeException(name + " line " + line + ": more than " + arity + " fields");
+                    row[n] = encode(Constant.of(field.toString()));
+                }
+                n++;
+                field.setLength(0);
+                wasQuoted = false;
+                if (c == '\n') {
+                    if (!blank && !skip) {
+                        if (n != arity) throw new RuntimeException(name + " line " + line + ": " + n + " fields, expected " + arity);
+                        append(row);
+                    }
+                    if (!blank) skip = false;
+                    n = 0;
+                    line++;
+                }
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+            c = r.read();
+        }
+        if (quoted) throw new RuntimeException(name + " line " + line + ": unterminated quoted field");
+        if (n > 0 || field.length() > 0 || wasQuoted) {
+            if (!skip) {
+                if (n >= arity) throw new RuntimeException(name + " line " + line + ": more than " + arity + " fields");
+                row[n++] = encode(Constant.of(field.toString()));
+                if (n != arity) throw new RuntimeException(name + " line " + line + ": " + n + " fields, expected " + arity);
+                append(row);
+            }
+        }
+        return size - before;
+    }
+
+    Term value(int code) {
+        return values.get(code);
+    }
+
+    // Backing array of a column; only the first size() codes are rows.
+    int[] column(int c) {
+        return columns[c];
+    }
+
+    // Replaces the contents by already encoded rows (from a knowledge-base image).
+    synchronized void restore(List<Term> dictionary, int[][] encoded, int rows) {
+        codes.clear();
+        values.clear();
+        for (Term v : dictionary) encode(v);
+        columns = encoded;
+        size = rows;
+        indexes = new ColumnIndex[arity];
+        indexed = false;
+    }
+
+    private int encode(Term value) {
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = values.size();
+            codes.put(value, code);
+            values.add(value);
+        }
+        return code;
+    }
+
+    private void append(int[] row) {
+        if (arity > 0 && size == columns[0].length) {
+            int cap = (int) Math.min(size + (size >> 1) + 16L, Integer.MAX_VALUE - 8);
+            if (cap == size) throw new IllegalStateException("Relation " + name + "/" + arity + " is full");
+            for (int i = 0; i < arity; i++) columns[i] = Arrays.copyOf(columns[i], cap);
+        }
+        for (int i = 0; i < arity; i++) columns[i][size] = row[i];
+        size++;
+        if (indexed) {
+            indexes = new ColumnIndex[arity]; // rebuilt on demand
+            indexed = false;
+        }
+    }
+
+    // The rows a call can match: selection codes per argument and the rows to check.
+    Scan select(List<Term> goalArgs, int frame, BindingEnvironment env) {
+        int[] want = new int[arity];
+        int best = -1;
+        int[] rows = null;
+        int lo = 0, hi = size;
+        for (int i = 0; i < arity; i++) {
+            Term t = Unifier.walk(goalArgs.get(i), frame, env);
+            if (t instanceof Variable) {
+                want[i] = FREE;
+                continue;
+            }
+            Integer code = t instanceof Constant || t instanceof Thing ? codes.get(t) : null;
+            if (code == null) return new Scan(this, want, null, 0, 0);
+            want[i] = code;
+            ColumnIndex ix = index(i);
+            int from = ix.start[code], to = ix.start[code + 1];
+            if (best < 0 || to - from < hi - lo) {
+                best = i;
+                rows = ix.rows;
+                lo = from;
+                hi = to;
+            }
+        }
+        return new Scan(this, want, rows, lo, hi);
+    }
+
+    private ColumnIndex index(int column) {
+        ColumnIndex[] ixs = indexes;
+        ColumnIndex ix = ixs[column];
+        return ix != null ? ix : buildIndex(column);
+    }
+
+    // Counting sort of the row numbers by their code in the column.
+    private synchronized ColumnIndex buildIndex(int column) {
+        ColumnIndex[] ixs = indexes;
+        if (ixs[column] != null) return ixs[column];
+        int[] col = columns[column];
+        int[] start = new int[values.size() + 1];
+        for (int r = 0; r < size; r++) start[col[r] + 1]++;
+        for (int v = 0; v < values.size(); v++) start[v + 1] += start[v];
+        int[] fill = Arrays.copyOf(start, values.size());
+        int[] rows = new int[size];
+        for (int r = 0; r < size; r++) rows[fill[col[r]]++] = r;
+        ColumnIndex ix = new ColumnIndex(start, rows);
+        ColumnIndex[] grown = ixs.clone();
+        grown[column] = ix;
+        indexes = grown;
+        indexed = true;
+        return ix;
+    }
+
+    @Override
+    public String toString() {
+        return name + "/" + arity + " (" + size + " rows, " + values.size() + " values)";
+    }
+
+    private static final class ColumnIndex {
+        final int[] start; // rows with code v are rows[start[v] .. start[v+1])
+        final int[] rows;
+
+        ColumnIndex(int[] start, int[] rows) {
+            this.start = start;
+            this.rows = rows;
+        }
+    }
+
+    // One call's pass over the relation. Positions run over the selected index range, or over
+    // all rows when no argument is bound.
+    static final class Scan {
+        private final FactRelation relation;
+        private final int[] want;
+        private final int[] rows; // null: position = row number
+        private final int lo, hi;
+
+        Scan(FactRelation relation, int[] want, int[] rows, int lo, int hi) {
+            this.relation = relation;
+            this.want = want;
+            this.rows = rows;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        // First matching position at or after the i-th, or -1.
+        int next(int i) {
+            int[][] columns = relation.columns;
+            for (int p = lo + i; p < hi; p++) {
+                int row = rows == null ? p : rows[p];
+                boolean match = true;
+                for (int c = 0; c < want.length && match; c++) {
+                    match = want[c] == FREE || columns[c][row] == want[c];
+                }
+                if (match) return p - lo;
+            }
+            return -1;
+        }
+
+        // Binds the call's unbound arguments to the values of the row at position i; false if a
+        // variable occurring twice in the call meets two different values.
+        boolean bind(int i, Functor goal, int frame, BacktrackEnvironment env) {
+            int row = rows == null ? lo + i : rows[lo + i];
+            List<Term> args = goal.args();
+            for (int c = 0; c < want.length; c++) {
+                if (want[c] != FREE) continue;
+                Term value = relation.values.get(relation.columns[c][row]);
+                if (!Unifier.atom(args.get(c), frame, value, env)) return false;
+            }
+            return true;
+        }
+    }
+}
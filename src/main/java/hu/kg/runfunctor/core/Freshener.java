@@ -1,53 +1,178 @@
 package hu.kg.runfunctor.core;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
 
 public final class Freshener {
-    private static long COUNTER = 0;
+    private static final AtomicLong COUNTER = new AtomicLong();
 
     private Freshener() {}
 
+    // Numbers the variables of a clause 0..n-1 in order of first occurrence.
+    // Done once when the clause is added to a Program.
+    public static Clause compile(Clause c) {
+        Map<Object, Variable> slots = new HashMap<>();
+        Functor head = (Functor) markFirst(numberTerm(c.head(), slots), new HashSet<>());
+        List<BodyElement> body = numberGoals(c.body(), slots);
+        return new Clause(head, body, slots.size(), segments(body));
+    }
+
+    // Numbers the variables of a query; vars receives them in slot order.
+    static List<BodyElement> compileGoals(List<BodyElement> goals, List<Variable> vars) {
+        Map<Object, Variable> slots = new LinkedHashMap<>();
+        List<BodyElement> out = numberGoals(goals, slots);
+        vars.addAll(slots.values());
+        return out;
+    }
+
+    // Renames a compiled clause apart by reserving a frame of varCount slots in env and copying it.
+    // The solver does not need this: it reads shared clause terms through the frame instead.
+    public static Clause freshen(Clause c, BacktrackEnvironment env) {
+        int frame = env.allocate(c.varCount());
+        Functor head = (Functor) env.instantiate(c.head(), frame);
+        return new Clause(head, freshenGoals(c.body(), t -> env.instantiate(t, frame),
+                v -> env.var(frame + v.slot(), v)));
+    }
+
+    // Renames a clause apart without an environment, compiled or not: every variable gets a new
+    // name, X becoming X__n with n unique to the call. The copy is uncompiled, like a parsed clause.
     public static Clause freshen(Clause c) {
-        long id = ++COUNTER;
-        Map<String, Variable> ren = new HashMap<>();
-        Functor head = (Functor) copyTerm(c.head(), ren, id);
-        List<BodyElement> body = new ArrayList<>(c.body().size());
-        for (BodyElement be : c.body()) {
+        long id = COUNTER.incrementAndGet();
+        Map<Variable, Variable> renamed = new HashMap<>();
+        UnaryOperator<Variable> rename = v -> renamed.computeIfAbsent(v, k -> new Variable(k.name() + "__" + id));
+        UnaryOperator<Term> copy = t -> copyTerm(t, rename);
+        return new Clause((Functor) copy.apply(c.head()), freshenGoals(c.body(), copy, rename));
+    }
+
+    private static Term copyTerm(Term t, UnaryOperator<Variable> rename) {
+        if (t instanceof Variable v) return rename.apply(v);
+        if (!(t instanceof Functor f)) return t; // Constants and Things are values
+        List<Term> args = new ArrayList<>(f.args().size());
+        for (Term a : f.args()) args.add(copyTerm(a, rename));
+        return new Functor(f.name(), args);
+    }
+
+    private static List<BodyElement> freshenGoals(List<BodyElement> goals, UnaryOperator<Term> copy, UnaryOperator<Variable> target) {
+        List<BodyElement> body = new ArrayList<>(goals.size());
+        for (BodyElement be : goals) {
+            if (be instanceof Functor f) {
+                body.add((Functor) copy.apply(f));
+            } else if (be instanceof RunnableAssignment ra) {
+                List<Term> args = new ArrayList<>(ra.args().size());
+                for (Term a : ra.args()) args.add(copy.apply(a));
+                body.add(new RunnableAssignment(ra.builtinName(), args, target.apply(ra.target())));
+            } else if (be instanceof Cut) {
+                body.add(be);
+            } else if (be instanceof Once o) {
+                body.add(new Once(freshenGoals(o.goals(), copy, target)));
+            } else if (be instanceof IfThenElse ite) {
+                List<BodyElement> otherwise = ite.otherwise() == null ? null : freshenGoals(ite.otherwise(), copy, target);
+                body.add(new IfThenElse(freshenGoals(ite.condition(), copy, target), freshenGoals(ite.then(), copy, target), otherwise));
+            } else if (be instanceof Disjunction d) {
+                body.add(new Disjunction(freshenGoals(d.left(), copy, target), freshenGoals(d.right(), copy, target)));
+            } else {
+                throw new IllegalStateException("Unknown body element: " + be);
+            }
+        }
+        return body;
+    }
+
+    // Splits a numbered body into maximal runs of goals that share no variable with any other run,
+    // as boundaries 0 = b[0] < b[1] < ... < b[k] = size. Null unless there are at least two runs
+    // and every element is a call (runnables are left in place, as they may not be pure).
+    static int[] segments(List<BodyElement> body) {
+        int n = body.size();
+        if (n < 2) return null;
+        List<List<Integer>> slots = new ArrayList<>(n);
+        Map<Integer, Integer> last = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            if (!(body.get(i) instanceof Functor f)) return null;
+            List<Integer> s = new ArrayList<>();
+            collectSlots(f, s);
+            for (Integer slot : s) last.put(slot, i);
+            slots.add(s);
+        }
+        List<Integer> bounds = new ArrayList<>();
+        bounds.add(0);
+        int reach = 0;
+        for (int i = 0; i < n; i++) {
+            for (Integer slot : slots.get(i)) reach = Math.max(reach, last.get(slot));
+            if (reach <= i && i + 1 < n) bounds.add(i + 1);
+        }
+        if (bounds.size() < 2) return null;
+        bounds.add(n);
+        int[] out = new int[bounds.size()];
+        for (int i = 0; i < out.length; i++) out[i] = bounds.get(i);
+        return out;
+    }
+
+    private static void collectSlots(Term t, List<Integer> out) {
+        if (t instanceof Variable v) {
+            out.add(v.slot());
+        } else if (t instanceof Functor f) {
+            for (Term a : f.args()) collectSlots(a, out);
+        }
+    }
+
+    private static List<BodyElement> numberGoals(List<BodyElement> goals, Map<Object, Variable> slots) {
+        List<BodyElement> out = new ArrayList<>(goals.size());
+        for (BodyElement be : goals) {
             if (be instanceof Functor f) {
-                body.add((Functor) copyTerm(f, ren, id));
+                out.add((Functor) numberTerm(f, slots));
             } else if (be instanceof RunnableAssignment ra) {
                 List<Term> args = new ArrayList<>(ra.args().size());
-                for (Term a : ra.args()) args.add(copyTerm(a, ren, id));
-                Variable target = renameVar(ra.target(), ren, id);
-                body.add(new RunnableAssignment(ra.builtinName(), args, target));
+                for (Term a : ra.args()) args.add(numberTerm(a, slots));
+                out.add(new RunnableAssignment(ra.builtinName(), args, numberVar(ra.target(), slots)));
+            } else if (be instanceof Cut) {
+                out.add(be);
+            } else if (be instanceof Once o) {
+                out.add(new Once(numberGoals(o.goals(), slots)));
+            } else if (be instanceof IfThenElse ite) {
+                List<BodyElement> condition = numberGoals(ite.condition(), slots);
+                List<BodyElement> then = numberGoals(ite.then(), slots);
+                List<BodyElement> otherwise = ite.otherwise() == null ? null : numberGoals(ite.otherwise(), slots);
+                out.add(new IfThenElse(condition, then, otherwise));
+            } else if (be instanceof Disjunction d) {
+                List<BodyElement> left = numberGoals(d.left(), slots);
+                out.add(new Disjunction(left, numberGoals(d.right(), slots)));
             } else {
                 throw new IllegalStateException("Unknown body element: " + be);
             }
         }
-        return new Clause(head, body);
+        return out;
     }
 
-    private static Term copyTerm(Term t, Map<String, Variable> ren, long id) {
+    private static Term numberTerm(Term t, Map<Object, Variable> slots) {
+        if (t.isGround()) return t; // shared as it is, hash-consed terms included
         if (t instanceof Variable v) {
-            return renameVar(v, ren, id);
+            return numberVar(v, slots);
         } else if (t instanceof Functor f) {
             List<Term> args = new ArrayList<>(f.args().size());
-            for (Term a : f.args()) args.add(copyTerm(a, ren, id));
-            return new Functor(f.name(), args);
+            for (Term a : f.args()) args.add(numberTerm(a, slots));
+            return f.withArgs(args);
         } else {
-            // Constant or Thing are immutable/value objects
             return t;
         }
     }
 
-    private static Variable renameVar(Variable v, Map<String, Variable> ren, long id) {
-        return ren.computeIfAbsent(v.name(), n -> {
-            boolean star = n.startsWith("*");
-            String base = star ? n.substring(1) : n;
-            String fresh = (star ? "*" : "") + base + "__" + id;
-            return new Variable(fresh);
-        });
+    // Replaces the first occurrence of each variable (left to right) by its marked copy.
+    private static Term markFirst(Term t, Set<Integer> seen) {
+        if (t.isGround()) return t;
+        if (t instanceof Variable v) {
+            return seen.add(v.slot()) ? v.firstOccurrence() : v;
+        } else if (t instanceof Functor f) {
+            List<Term> args = new ArrayList<>(f.args().size());
+            for (Term a : f.args()) args.add(markFirst(a, seen));
+            return f.withArgs(args);
+        } else {
+            return t;
+        }
     }
-}
-
 
+    // Parsed variables are told apart by name, variables of already-solved terms by slot.
+    private static Variable numberVar(Variable v, Map<Object, Variable> slots) {
+        Object key = v.slot() >= 0 ? (Object) v.slot() : v.name();
+        return slots.computeIfAbsent(key, k -> new Variable(v.name(), slots.size(), false));
+    }
+}
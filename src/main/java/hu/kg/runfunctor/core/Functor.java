@@ -5,25 +5,70 @@ import java.util.*;
 public class Functor implements Term, BodyElement {
     private final String name;
     private final List<Term> args;
+    private final int id; // symbol id of name/arity
+    private final boolean ground; // no variables anywhere below
+    private int hash; // cached, 0 until computed
+    boolean canonical; // the hash-consed instance of its structure (see Symbols.compound)
 
     public Functor(String name, List<Term> args) {
         this.name = Objects.requireNonNull(name);
         this.args = List.copyOf(args);
+        this.id = Symbols.functor(name, this.args.size());
+        this.ground = allGround(this.args);
+    }
+
+    private Functor(Functor same, List<Term> args) {
+        this.name = same.name;
+        this.args = List.copyOf(args);
+        this.id = same.id;
+        this.ground = allGround(this.args);
+    }
+
+    private static boolean allGround(List<Term> args) {
+        for (Term t : args) {
+            if (!t.isGround()) return false;
+        }
+        return true;
+    }
+
+    // The same functor over new arguments (no symbol lookup).
+    Functor withArgs(List<Term> args) {
+        return new Functor(this, args);
     }
 
     public String name() {
         return name;
     }
 
+    // Symbol id of name/arity: equal ids mean the same name and arity.
+    public int id() {
+        return id;
+    }
+
     public List<Term> args() {
         return args;
     }
 
+    @Override
+    public boolean isGround() {
+        return ground;
+    }
+
+    // Rebuilds only the path down to bound variables; ground subterms and unchanged args are shared.
     @Override
     public Term resolve(BindingEnvironment env) {
-        List<Term> ra = new ArrayList<>(args.size());
-        for (Term t : args) ra.add(t.resolve(env));
-        return new Functor(name, ra);
+        if (ground) return this;
+        List<Term> copy = null;
+        for (int i = 0; i < args.size(); i++) {
+            Term a = args.get(i);
+            Term r = a.resolve(env);
+            if (r != a && copy == null) {
+                copy = new ArrayList<>(args.size());
+                copy.addAll(args.subList(0, i));
+            }
+            if (copy != null) copy.add(r);
+        }
+        return copy == null ? this : new Functor(this, copy);
     }
 
     @Override
@@ -44,6 +89,26 @@ public class Functor implements Term, BodyElement {
         return toSource();
     }
 
+    // Structural equality; two hash-consed terms are equal only if they are the same instance.
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Functor f) || f.id != id || (canonical && f.canonical)) return false;
+        if (hash != 0 && f.hash != 0 && hash != f.hash) return false;
+        return args.equals(f.args);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = 31 * id + args.hashCode();
+            if (h == 0) h = 1;
+            hash = h;
+        }
+        return h;
+    }
+
     @Override
     public void execute(BindingEnvironment env, Builtins builtins) {
         // Non-runnable functor: no execution here (handled by a Prolog engine if desired).
@@ -0,0 +1,44 @@
+package hu.kg.runfunctor.core;
+
+import java.util.List;
+
+// A body element of a clause activation, read through that activation's frame.
+// Goals form an immutable linked continuation: the rest of the conjunction is shared, never copied.
+final class Goal {
+    final BodyElement element;
+    final int frame;
+    final Goal next;
+    final Object target; // linked Predicate or BuiltinFunction, null if resolved when run
+    final int barrier;   // choicepoint stack height a cut in this goal's clause cuts back to
+
+    Goal(BodyElement element, int frame, Goal next) {
+        this(element, frame, next, null, 0);
+    }
+
+    Goal(BodyElement element, int frame, Goal next, Object target, int barrier) {
+        this.element = element;
+        this.frame = frame;
+        this.next = next;
+        this.target = target;
+        this.barrier = barrier;
+    }
+
+    // Prepends body (read through frame) to the continuation next in O(body).
+    static Goal prepend(List<BodyElement> body, int frame, Goal next) {
+        return prepend(body, null, frame, 0, next);
+    }
+
+    // As above, with the link targets of the body elements (see Program.link) or null,
+    // and the cut barrier of the activation the body belongs to.
+    static Goal prepend(List<BodyElement> body, Object[] links, int frame, int barrier, Goal next) {
+        for (int i = body.size() - 1; i >= 0; i--) {
+            next = new Goal(body.get(i), frame, next, links == null ? null : links[i], barrier);
+        }
+        return next;
+    }
+
+    @Override
+    public String toString() {
+        return element.toSource() + "@" + frame;
+    }
+}
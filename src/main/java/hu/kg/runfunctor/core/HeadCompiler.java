@@ -0,0 +1,172 @@
+package hu.kg.runfunctor.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Path;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Compiles the head unification of a program's clauses to JVM classes.
+ * Each predicate becomes one generated class with a method per clause: constant arguments are
+ * compared in place, the first occurrence of a head variable is bound without a general unification
+ * or occurs check, and only compound arguments and repeated variables go through Unifier.
+ * The source is compiled in memory with the system Java compiler and defined as a hidden class
+ * in this package; without a compiler (on a bare JRE) clauses simply stay interpreted.
+ */
+final class HeadCompiler {
+    static final int MAX_CLAUSES = 512; // larger predicates are fact tables, served by the indexes
+
+    private HeadCompiler() {}
+
+    // Compiles the given predicates; false if no Java compiler is available, the engine's classes
+    // cannot be located for it, or compilation failed.
+    static boolean compile(List<Predicate> predicates) {
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        String classpath = engineClasspath();
+        if (javac == null || classpath == null) return false;
+        List<Source> sources = new ArrayList<>();
+        Map<String, Term[]> constants = new HashMap<>();
+        Map<String, List<Clause>> clauses = new HashMap<>();
+        for (Predicate p : predicates) {
+            List<Clause> cs = new ArrayList<>(p.clauses());
+            if (cs.isEmpty() || cs.size() > MAX_CLAUSES) continue;
+            String name = "CompiledHead" + cs.get(0).head().id();
+            List<Term> k = new ArrayList<>();
+            sources.add(new Source(name, generate(name, cs, k)));
+            constants.put(name, k.toArray(new Term[0]));
+            clauses.put(name, cs);
+        }
+        if (sources.isEmpty()) return true;
+
+        Map<String, ByteArrayOutputStream> classes = new HashMap<>();
+        StandardJavaFileManager std = javac.getStandardFileManager(null, null, null);
+        JavaFileManager files = new ForwardingJavaFileManager<>(std) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                classes.put(className.substring(className.lastIndexOf('.') + 1), out);
+                return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + kind.extension), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        return out;
+                    }
+                };
+            }
+        };
+        List<String> options = List.of("-classpath", classpath, "-proc:none", "-g:none");
+        if (!javac.getTask(null, files, d -> {}, options, null, sources).call()) return false;
+
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            for (Map.Entry<String, List<Clause>> e : clauses.entrySet()) {
+                Class<?> c = lookup.defineHiddenClass(classes.get(e.getKey()).toByteArray(), true).lookupClass();
+                MethodHandle ctor = MethodHandles.privateLookupIn(c, lookup)
+                        .findConstructor(c, MethodType.methodType(void.class, int.class, Term[].class));
+                Term[] k = constants.get(e.getKey());
+                List<Clause> cs = e.getValue();
+                for (int i = 0; i < cs.size(); i++) cs.get(i).setMatcher((HeadMatcher) ctor.invoke(i, k));
+            }
+        } catch (Throwable ex) {
+            throw new IllegalStateException("Defining compiled clause heads failed", ex);
+        }
+        return true;
+    }
+
+    // The generated code refers only to the engine's own classes, so javac gets the directory or jar
+    // (shaded or not) this class was loaded from. The process classpath may not contain it at all,
+    // e.g. under an application server or any other non-system class loader.
+    private static String engineClasspath() {
+        try {
+            CodeSource cs = HeadCompiler.class.getProtectionDomain().getCodeSource();
+            return cs == null || cs.getLocation() == null ? null : Path.of(cs.getLocation().toURI()).toString();
+        } catch (URISyntaxException | IllegalArgumentException | FileSystemNotFoundException | SecurityException e) {
+            return null; // not a plain file location (e.g. a jar nested in another jar)
+        }
+    }
+
+    private static String generate(String name, List<Clause> clauses, List<Term> k) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("package hu.kg.runfunctor.core;\n\n");
+        sb.append("import java.util.List;\n\n");
+        sb.append("final class ").append(name).append(" implements HeadMatcher {\n");
+        sb.append("    private final int clause;\n");
+        sb.append("    private final Term[] k;\n\n");
+        sb.append("    ").append(name).append("(int clause, Term[] k) {\n");
+        sb.append("        this.clause = clause;\n");
+        sb.append("        this.k = k;\n");
+        sb.append("    }\n\n");
+        sb.append("    public boolean unify(Functor goal, int gf, int f, BacktrackEnvironment env) {\n");
+        sb.append("        List<Term> a = goal.args();\n");
+        sb.append("        switch (clause) {\n");
+        for (int i = 0; i < clauses.size(); i++) {
+            sb.append("            case ").append(i).append(": return c").append(i).append("(a, gf, f, env);\n");
+        }
+        sb.append("            default: throw new IllegalStateException(\"No clause \" + clause);\n");
+        sb.append("        }\n");
+        sb.append("    }\n");
+        for (int i = 0; i < clauses.size(); i++) {
+            sb.append("\n    private boolean c").append(i).append("(List<Term> a, int gf, int f, BacktrackEnvironment env) {\n");
+            Set<Integer> seen = new HashSet<>();
+            List<Term> args = clauses.get(i).head().args();
+            for (int j = 0; j < args.size(); j++) {
+                Term t = args.get(j);
+                int ki = k.size();
+                k.add(t);
+                if (t instanceof Variable v && seen.add(v.slot())) {
+                    sb.append("        Unifier.first(a.get(").append(j).append("), gf, f, (Variable) k[").append(ki).append("], env);\n");
+                } else if (t instanceof Constant || t instanceof Thing) {
+                    sb.append("        if (!Unifier.atom(a.get(").append(j).append("), gf, k[").append(ki).append("], env)) return false;\n");
+                } else {
+                    if (t instanceof Functor) collectSlots(t, seen);
+                    sb.append("        if (!Unifier.unify(a.get(").append(j).append("), gf, k[").append(ki).append("], f, env)) return false;\n");
+                }
+            }
+            sb.append("        return true;\n");
+            sb.append("    }\n");
+        }
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private static void collectSlots(Term t, Set<Integer> out) {
+        if (t instanceof Variable v) {
+            out.add(v.slot());
+        } else if (t instanceof Functor f) {
+            for (Term a : f.args()) collectSlots(a, out);
+        }
+    }
+
+    private static final class Source extends SimpleJavaFileObject {
+        private final String code;
+
+        Source(String name, String code) {
+            super(URI.create("string:///hu/kg/runfunctor/core/" + name + Kind.SOURCE.extension), Kind.SOURCE);
+            this.code = code;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return code;
+        }
+    }
+}
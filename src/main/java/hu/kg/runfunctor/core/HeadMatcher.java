@@ -0,0 +1,7 @@
+package hu.kg.runfunctor.core;
+
+// Head unification of one compiled clause, generated by HeadCompiler.
+// Same contract as Unifier.unify(goal, goalFrame, head, frame, env).
+interface HeadMatcher {
+    boolean unify(Functor goal, int goalFrame, int frame, BacktrackEnvironment env);
+}
@@ -0,0 +1,62 @@
+package hu.kg.runfunctor.core;
+
+import java.util.List;
+import java.util.Objects;
+
+// ( C -> T ; E ): runs T with the first solution of C, or E if C has none.
+// Without an else branch, ( C -> T ) fails when C does.
+public final class IfThenElse implements BodyElement {
+    private final List<BodyElement> condition;
+    private final List<BodyElement> then;
+    private final List<BodyElement> otherwise; // null if absent
+
+    public IfThenElse(List<BodyElement> condition, List<BodyElement> then, List<BodyElement> otherwise) {
+        this.condition = List.copyOf(Objects.requireNonNull(condition));
+        this.then = List.copyOf(Objects.requireNonNull(then));
+        this.otherwise = otherwise == null ? null : List.copyOf(otherwise);
+    }
+
+    public List<BodyElement> condition() {
+        return condition;
+    }
+
+    public List<BodyElement> then() {
+        return then;
+    }
+
+    public List<BodyElement> otherwise() {
+        return otherwise;
+    }
+
+    @Override
+    public boolean isRunnable() {
+        return false;
+    }
+
+    @Override
+    public void execute(BindingEnvironment env, Builtins builtins) {
+        throw new IllegalStateException("An if-then-else is executed by the solver");
+    }
+
+    @Override
+    public String toSource() {
+        StringBuilder sb = new StringBuilder();
+        sb.append('(').append(toSource(condition)).append(" -> ").append(toSource(then));
+        if (otherwise != null) sb.append(" ; ").append(toSource(otherwise));
+        return sb.append(')').toString();
+    }
+
+    @Override
+    public String toString() {
+        return toSource();
+    }
+
+    static String toSource(List<BodyElement> goals) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < goals.size(); i++) {
+            if (i > 0) sb.append(',');
+            sb.append(goals.get(i).toSource());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,68 @@
+package hu.kg.runfunctor.core;
+
+/**
+ * Snapshot of the just-in-time argument indexes of one predicate:
+ * which positions have been indexed, and how often each was chosen at call time.
+ */
+public final class IndexStats {
+    private final String name;
+    private final int arity;
+    private final int clauseCount;
+    private final boolean[] indexed;
+    private final int indexesBuilt;
+    private final long[] selections;
+    private final long scans;
+
+    IndexStats(String name, int arity, int clauseCount, boolean[] indexed, int indexesBuilt, long[] selections, long scans) {
+        this.name = name;
+        this.arity = arity;
+        this.clauseCount = clauseCount;
+        this.indexed = indexed;
+        this.indexesBuilt = indexesBuilt;
+        this.selections = selections;
+        this.scans = scans;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int arity() {
+        return arity;
+    }
+
+    public int clauseCount() {
+        return clauseCount;
+    }
+
+    public boolean isIndexed(int position) {
+        return indexed[position];
+    }
+
+    public int indexesBuilt() {
+        return indexesBuilt;
+    }
+
+    // Number of calls that selected their candidates through the index on this position.
+    public long selections(int position) {
+        return selections[position];
+    }
+
+    // Number of calls that fell back to the full clause list.
+    public long scans() {
+        return scans;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(name).append('/').append(arity).append(": ").append(clauseCount).append(" clauses, ");
+        sb.append(indexesBuilt).append(" indexes built, selections [");
+        for (int i = 0; i < arity; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(indexed[i] ? String.valueOf(selections[i]) : "-");
+        }
+        sb.append("], scans ").append(scans);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,180 @@
+package hu.kg.runfunctor.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * The independent tail segments of one body activation, evaluated once each.
+ * The answers of a segment are the values of the unbound variables it can reach,
+ * stored as compiled facts over those variables; the machine then enumerates the
+ * cross product of the segments' answers in the order nested backtracking would.
+ * Segments are computed in sub-machines on copies of the bindings, either on the
+ * common ForkJoinPool as soon as the body is activated or in place when first reached.
+ * A join that will not be used is cancelled, which stops the segments still running.
+ */
+final class Join implements BodyElement {
+    private final List<BodyElement> body;
+    private final int[] segments;
+    private final Functor[] tuples; // per joined segment: its unbound variables, frame-free
+    private final Segment[] parts;
+
+    private Join(List<BodyElement> body, int[] segments, Functor[] tuples, Segment[] parts) {
+        this.body = body;
+        this.segments = segments;
+        this.tuples = tuples;
+        this.parts = parts;
+    }
+
+    // Join of the segments after the first, or null if under the current bindings two segments
+    // reach the same unbound variable (they are then not independent and must run nested).
+    static Join plan(Program program, Builtins builtins, BacktrackEnvironment env,
+                     List<BodyElement> body, int[] segments, int frame, boolean fork) {
+        int k = segments.length - 1;
+        Map<Integer, Integer> owner = new HashMap<>();
+        Functor[] tuples = new Functor[k - 1];
+        for (int s = 0; s < k; s++) {
+            List<Term> vars = new ArrayList<>();
+            for (int i = segments[s]; i < segments[s + 1]; i++) {
+                if (!collectFree((Functor) body.get(i), frame, s, env, owner, vars)) return null;
+            }
+            if (s > 0) tuples[s - 1] = new Functor("$join", vars);
+        }
+        Segment[] parts = new Segment[k - 1];
+        for (int s = 1; s < k; s++) {
+            Goal goals = Goal.prepend(body.subList(segments[s], segments[s + 1]), frame, null);
+            parts[s - 1] = new Segment(program, builtins, goals, tuples[s - 1]);
+            if (fork) parts[s - 1].fork(env);
+        }
+        return new Join(body, segments, tuples, parts);
+    }
+
+    // Records the unbound variables t reaches (read through frame) as belonging to segment seg.
+    private static boolean collectFree(Term t, int frame, int seg, BacktrackEnvironment env,
+                                       Map<Integer, Integer> owner, List<Term> vars) {
+        while (t instanceof Variable v) {
+            int s = frame + v.slot();
+            Term b = env.cell(s);
+            if (b == null) {
+                Integer prev = owner.putIfAbsent(s, seg);
+                if (prev == null) vars.add(env.var(s, v));
+                return prev == null || prev == seg;
+            }
+            t = b;
+            frame = 0;
+        }
+        if (t instanceof Functor f) {
+            for (Term a : f.args()) {
+                if (!collectFree(a, frame, seg, env, owner, vars)) return false;
+            }
+        }
+        return true;
+    }
+
+    int size() {
+        return parts.length;
+    }
+
+    Functor tuple(int i) {
+        return tuples[i];
+    }
+
+    // Answers of the i-th joined segment, computing them from env if they are not being computed yet.
+    List<Clause> answers(int i, BacktrackEnvironment env) {
+        return parts[i].answers(env);
+    }
+
+    // Stops the segments still being computed; their answers are not asked for afterwards.
+    void cancel() {
+        for (Segment s : parts) s.cancel();
+    }
+
+    // Number of combined answers; 0 if any segment has none.
+    long combinations(BacktrackEnvironment env) {
+        long n = 1;
+        for (int i = 0; i < parts.length && n > 0; i++) n *= parts[i].answers(env).size();
+        return n;
+    }
+
+    @Override
+    public boolean isRunnable() {
+        return false;
+    }
+
+    @Override
+    public void execute(BindingEnvironment env, Builtins builtins) {
+        throw new IllegalStateException("A join is executed by the solver");
+    }
+
+    @Override
+    public String toSource() {
+        StringBuilder sb = new StringBuilder();
+        for (int s = 1; s < segments.length - 1; s++) {
+            if (s > 1) sb.append(" & ");
+            sb.append('(');
+            for (int i = segments[s]; i < segments[s + 1]; i++) {
+                if (i > segments[s]) sb.append(',');
+                sb.append(body.get(i).toSource());
+            }
+            sb.append(')');
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return toSource();
+    }
+
+    private static final class Segment {
+        private final Program program;
+        private final Builtins builtins;
+        private final Goal goals;
+        private final Functor tuple;
+        private ForkJoinTask<List<Clause>> task;
+        private List<Clause> answers;
+        private volatile Machine machine; // evaluating the segment, stopped on cancel
+        private volatile boolean cancelled;
+
+        Segment(Program program, Builtins builtins, Goal goals, Functor tuple) {
+            this.program = program;
+            this.builtins = builtins;
+            this.goals = goals;
+            this.tuple = tuple;
+        }
+
+        void fork(BacktrackEnvironment env) {
+            BacktrackEnvironment copy = env.copy();
+            task = ForkJoinPool.commonPool().submit(() -> evaluate(copy));
+        }
+
+        List<Clause> answers(BacktrackEnvironment env) {
+            if (answers == null) answers = task != null ? task.join() : evaluate(env.copy());
+            return answers;
+        }
+
+        void cancel() {
+            cancelled = true;
+            if (task != null) task.cancel(false);
+            Machine m = machine;
+            if (m != null) m.stop();
+        }
+
+        // Segments nested inside this one are joined in place: forking stays at the top level.
+        private List<Clause> evaluate(BacktrackEnvironment env) {
+            Machine m = new Machine(program, builtins, env, goals, List.of());
+            m.andParallel(false);
+            machine = m;
+            List<Clause> out = new ArrayList<>();
+            if (cancelled) return out; // cancelled before machine was visible to cancel()
+            while (m.next()) {
+                out.add(Freshener.compile(new Clause((Functor) m.resolve(tuple), List.of())));
+            }
+            machine = null;
+            return out;
+        }
+    }
+}
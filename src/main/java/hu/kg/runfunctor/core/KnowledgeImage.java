@@ -0,0 +1,395 @@
+package hu.kg.runfunctor.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Binary image of a compiled Program, so a knowledge base is parsed once rather than on every start.
+ *
+ * Layout (big-endian): magic "RFKB", format version, and the offset of the tables at the end;
+ * then the encoded predicates (compiled clauses, or the dictionary and int columns of a fact
+ * relation); then the tables: the string pool (every name and atom, UTF-8, behind a table of
+ * their offsets) and the predicate directory (name, arity, flags, data offset, count, and the
+ * predicates and builtins its clause bodies call).
+ * load() maps the file and reads only the tables: each predicate is registered with a loader
+ * that decodes its clauses (or rows) from the mapping on first use, so start-up does not
+ * depend on the size of the knowledge base and processes mapping the same image share its pages.
+ * The stored calls let Program.link() report unresolved calls without decoding the clauses.
+ * Argument indexes are not stored; they are built on demand as for clauses added from source.
+ */
+public final class KnowledgeImage {
+    private static final int MAGIC = 0x52464B42; // "RFKB"
+    private static final int VERSION = 2;
+    private static final int HEADER = 16;
+
+    // Term and body element tags.
+    private static final byte CONSTANT = 0, THING = 1, VAR = 2, FIRST_VAR = 3, FUNCTOR = 4;
+    private static final byte GOAL = 10, RUNNABLE = 11, CUT = 12, ONCE = 13, IF_THEN_ELSE = 14, DISJUNCTION = 15;
+
+    private final MappedByteBuffer map;
+    private final IntBuffer stringOffsets; // in the mapping: where each string's length word is
+    private final String[] strings;        // decoded on demand
+
+    private KnowledgeImage(MappedByteBuffer map, IntBuffer stringOffsets) {
+        this.map = map;
+        this.stringOffsets = stringOffsets;
+        this.strings = new String[stringOffsets.limit()];
+    }
+
+    // True if file starts like an image (as opposed to knowledge-base source).
+    public static boolean isImage(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer b = ByteBuffer.allocate(4);
+            while (b.hasRemaining() && ch.read(b) >= 0) {}
+            return !b.hasRemaining() && b.getInt(0) == MAGIC;
+        }
+    }
+
+    // Writes every predicate of program (decoding any that were themselves loaded lazily).
+    public static void write(Program program, Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Out out = new Out(ch);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putLong(0); // tables offset, patched below
+            List<Predicate> predicates = new ArrayList<>(program.predicates());
+            long[] offsets = new long[predicates.size()];
+            int[] counts = new int[predicates.size()];
+            List<Set<Integer>> calls = new ArrayList<>(predicates.size());
+            List<Set<String>> builtins = new ArrayList<>(predicates.size());
+            for (int i = 0; i < predicates.size(); i++) {
+                Predicate p = predicates.get(i);
+                offsets[i] = out.position();
+                calls.add(new LinkedHashSet<>());
+                builtins.add(new LinkedHashSet<>());
+                FactRelation r = p.relation();
+                if (r != null) {
+                    counts[i] = r.size();
+                    out.putInt(r.distinctValues());
+                    for (int v = 0; v < r.distinctValues(); v++) out.term(r.value(v));
+                    for (int c = 0; c < r.arity(); c++) out.ints(r.column(c), r.size());
+                } else {
+                    counts[i] = p.clauses().size();
+                    for (Clause c : p.clauses()) {
+                        out.clause(c);
+                        collectCalls(c.body(), calls.get(i), builtins.get(i));
+                    }
+                }
+            }
+            long tables = out.position();
+            for (Predicate p : predicates) out.string(p.name());
+            for (Set<Integer> ids : calls) for (int id : ids) out.string(Symbols.functorName(id));
+            for (Set<String> names : builtins) for (String b : names) out.string(b);
+            List<byte[]> pool = new ArrayList<>(out.strings.size());
+            for (String s : out.strings.keySet()) pool.add(s.getBytes(StandardCharsets.UTF_8));
+            out.putInt(pool.size());
+            long at = tables + 4 + 4L * pool.size();
+            for (byte[] utf8 : pool) {
+                out.putInt((int) at);
+                at += 4 + utf8.length;
+            }
+            for (byte[] utf8 : pool) {
+                out.putInt(utf8.length);
+                out.bytes(utf8);
+            }
+            out.putInt(predicates.size());
+            for (int i = 0; i < predicates.size(); i++) {
+                Predicate p = predicates.get(i);
+                out.putInt(out.string(p.name()));
+                out.putInt(p.arity());
+                out.put((byte) ((p.isTabled() ? 1 : 0) | (p.relation() != null ? 2 : 0)));
+                out.put((byte) (p.occursCheck() == null ? 0 : p.occursCheck().ordinal() + 1));
+                out.putLong(offsets[i]);
+                out.putInt(counts[i]);
+                out.putInt(calls.get(i).size());
+                for (int id : calls.get(i)) {
+                    out.putInt(out.string(Symbols.functorName(id)));
+                    out.putInt(Symbols.functorArity(id));
+                }
+                out.putInt(builtins.get(i).size());
+                for (String b : builtins.get(i)) out.putInt(out.string(b));
+            }
+            out.flush();
+            ch.write(ByteBuffer.allocate(8).putLong(0, tables), 8);
+        }
+    }
+
+    // The goals (as functor ids) and builtins called by body, inside control constructs too.
+    private static void collectCalls(List<BodyElement> body, Set<Integer> calls, Set<String> builtins) {
+        for (BodyElement be : body) {
+            if (be instanceof Functor f) calls.add(f.id());
+            else if (be instanceof RunnableAssignment ra) builtins.add(ra.builtinName());
+            else for (List<BodyElement> nested : Program.nestedGoals(be)) collectCalls(nested, calls, builtins);
+        }
+    }
+
+    // A program whose predicates are read from the image as they are first used.
+    // Images over 2 GB are not supported (one mapping covers the whole file).
+    public static Program load(Path file) throws IOException {
+        MappedByteBuffer map;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (ch.size() > Integer.MAX_VALUE) throw new IOException("Image larger than 2 GB: " + file);
+            map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()); // stays valid after close
+        }
+        if (map.limit() < HEADER || map.getInt(0) != MAGIC) throw new IOException("Not a knowledge-base image: " + file);
+        int version = map.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported image version " + version + " (expected " + VERSION + "): " + file);
+        }
+        ByteBuffer in = map.duplicate().position((int) map.getLong(8));
+        int n = in.getInt();
+        IntBuffer offsets = in.slice().asIntBuffer().limit(n);
+        KnowledgeImage image = new KnowledgeImage(map, offsets);
+        in.position(n == 0 ? in.position() : offsets.get(n - 1) + 4 + map.getInt(offsets.get(n - 1)));
+
+        Program program = new Program();
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            String name = image.string(in.getInt());
+            int arity = in.getInt();
+            byte flags = in.get();
+            byte occurs = in.get();
+            int at = (int) in.getLong();
+            int size = in.getInt();
+            int[] calls = new int[in.getInt()];
+            for (int c = 0; c < calls.length; c++) calls[c] = Symbols.functor(image.string(in.getInt()), in.getInt());
+            String[] builtins = new String[in.getInt()];
+            for (int b = 0; b < builtins.length; b++) builtins[b] = image.string(in.getInt());
+            Predicate p = program.define(name, arity);
+            if ((flags & 1) != 0) p.setTabled(true);
+            if (occurs != 0) p.setOccursCheck(OccursCheck.values()[occurs - 1]);
+            if ((flags & 2) != 0) {
+                FactRelation r = p.defineRelation();
+                p.setLoader(() -> image.decodeRelation(r, at, size), calls, builtins);
+            } else if (size > 0) {
+                p.setLoader(() -> image.decodeClauses(program, p, at, size), calls, builtins);
+            }
+        }
+        return program;
+    }
+
+    private String string(int i) {
+        String s = strings[i];
+        if (s == null) {
+            int at = stringOffsets.get(i);
+            byte[] utf8 = new byte[map.getInt(at)];
+            map.get(at + 4, utf8);
+            s = new String(utf8, StandardCharsets.UTF_8);
+            strings[i] = s;
+        }
+        return s;
+    }
+
+    private void decodeClauses(Program program, Predicate p, int at, int count) {
+        ByteBuffer in = map.duplicate().position(at);
+        for (int i = 0; i < count; i++) {
+            int varCount = in.getInt();
+            Functor head = (Functor) term(in, in.get());
+            List<BodyElement> body = body(in);
+            program.addDecoded(p, new Clause(head, body, varCount, Freshener.segments(body)));
+        }
+    }
+
+    private void decodeRelation(FactRelation r, int at, int rows) {
+        ByteBuffer in = map.duplicate().position(at);
+        int n = in.getInt();
+        List<Term> dictionary = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) dictionary.add(term(in, in.get()));
+        int[][] columns = new int[r.arity()][];
+        IntBuffer ints = in.slice().asIntBuffer();
+        for (int c = 0; c < columns.length; c++) {
+            columns[c] = new int[rows];
+            ints.get(columns[c]);
+        }
+        r.restore(dictionary, columns, rows);
+    }
+
+    private Term term(ByteBuffer in, byte tag) {
+        switch (tag) {
+            case CONSTANT:
+                return Constant.of(string(in.getInt()));
+            case THING:
+                return Thing.of(string(in.getInt()));
+            case VAR:
+            case FIRST_VAR: {
+                int slot = in.getInt();
+                Variable v = new Variable(string(in.getInt()), slot, false);
+                return tag == FIRST_VAR ? v.firstOccurrence() : v;
+            }
+            case FUNCTOR: {
+                String name = string(in.getInt());
+                int arity = in.getInt();
+                List<Term> args = new ArrayList<>(arity);
+                for (int i = 0; i < arity; i++) args.add(term(in, in.get()));
+                return Symbols.compound(new Functor(name, args));
+            }
+            default:
+                throw new IllegalStateException("Corrupt image: term tag " + tag + " at " + (in.position() - 1));
+        }
+    }
+
+    private List<BodyElement> body(ByteBuffer in) {
+        int n = in.getInt();
+        List<BodyElement> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            byte tag = in.get();
+            switch (tag) {
+                case GOAL -> out.add((Functor) term(in, FUNCTOR));
+                case RUNNABLE -> {
+                    String builtin = string(in.getInt());
+                    int argc = in.getInt();
+                    List<Term> args = new ArrayList<>(argc);
+                    for (int a = 0; a < argc; a++) args.add(term(in, in.get()));
+                    out.add(new RunnableAssignment(builtin, args, (Variable) term(in, in.get())));
+                }
+                case CUT -> out.add(Cut.INSTANCE);
+                case ONCE -> out.add(new Once(body(in)));
+                case IF_THEN_ELSE -> {
+                    List<BodyElement> condition = body(in);
+                    List<BodyElement> then = body(in);
+                    out.add(new IfThenElse(condition, then, in.get() != 0 ? body(in) : null));
+                }
+                case DISJUNCTION -> {
+                    List<BodyElement> left = body(in);
+                    out.add(new Disjunction(left, body(in)));
+                }
+                default -> throw new IllegalStateException("Corrupt image: body tag " + tag + " at " + (in.position() - 1));
+            }
+        }
+        return out;
+    }
+
+    // Buffered channel writer that also collects the string pool.
+    private static final class Out {
+        private final FileChannel ch;
+        private final ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+        private final Map<String, Integer> strings = new LinkedHashMap<>();
+        private long flushed;
+
+        Out(FileChannel ch) {
+            this.ch = ch;
+        }
+
+        long position() {
+            return flushed + buf.position();
+        }
+
+        private void room(int n) throws IOException {
+            if (buf.remaining() < n) flush();
+        }
+
+        void flush() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) flushed += ch.write(buf);
+            buf.clear();
+        }
+
+        void put(byte b) throws IOException {
+            room(1);
+            buf.put(b);
+        }
+
+        void putInt(int i) throws IOException {
+            room(4);
+            buf.putInt(i);
+        }
+
+        void putLong(long l) throws IOException {
+            room(8);
+            buf.putLong(l);
+        }
+
+        void bytes(byte[] b) throws IOException {
+            for (int off = 0; off < b.length; ) {
+                room(1);
+                int n = Math.min(buf.remaining(), b.length - off);
+                buf.put(b, off, n);
+                off += n;
+            }
+        }
+
+        void ints(int[] a, int n) throws IOException {
+            for (int i = 0; i < n; i++) putInt(a[i]);
+        }
+
+        int string(String s) {
+            return strings.computeIfAbsent(s, k -> strings.size());
+        }
+
+        void clause(Clause c) throws IOException {
+            putInt(c.varCount());
+            term(c.head());
+            body(c.body());
+        }
+
+        void term(Term t) throws IOException {
+            if (t instanceof Constant c) {
+                put(CONSTANT);
+                putInt(string(c.value()));
+            } else if (t instanceof Thing th) {
+                put(THING);
+                putInt(string(th.content()));
+            } else if (t instanceof Variable v) {
+                put(v.isFirstOccurrence() ? FIRST_VAR : VAR);
+                putInt(v.slot());
+                putInt(string(v.name()));
+            } else {
+                Functor f = (Functor) t;
+                put(FUNCTOR);
+                functor(f);
+            }
+        }
+
+        private void functor(Functor f) throws IOException {
+            putInt(string(f.name()));
+            putInt(f.args().size());
+            for (Term a : f.args()) term(a);
+        }
+
+        void body(List<BodyElement> body) throws IOException {
+            putInt(body.size());
+            for (BodyElement be : body) {
+                if (be instanceof Functor f) {
+                    put(GOAL);
+                    functor(f);
+                } else if (be instanceof RunnableAssignment ra) {
+                    put(RUNNABLE);
+                    putInt(string(ra.builtinName()));
+                    putInt(ra.args().size());
+                    for (Term a : ra.args()) term(a);
+                    term(ra.target());
+                } else if (be instanceof Cut) {
+                    put(CUT);
+                } else if (be instanceof Once o) {
+                    put(ONCE);
+                    body(o.goals());
+                } else if (be instanceof IfThenElse ite) {
+                    put(IF_THEN_ELSE);
+                    body(ite.condition());
+                    body(ite.then());
+                    put((byte) (ite.otherwise() != null ? 1 : 0));
+                    if (ite.otherwise() != null) body(ite.otherwise());
+                } else if (be instanceof Disjunction d) {
+                    put(DISJUNCTION);
+                    body(d.left());
+                    body(d.right());
+                } else {
+                    throw new IllegalStateException("Cannot store body element: " + be);
+                }
+            }
+        }
+    }
+}
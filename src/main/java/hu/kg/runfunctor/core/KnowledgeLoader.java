@@ -0,0 +1,114 @@
+package hu.kg.runfunctor.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Streams knowledge-base source into a Program.
+ * The file is read line by line (one clause or directive per line, comments stripped as by
+ * Util.splitAndremoveComments) and cut into chunks of whole lines; the chunks are parsed and
+ * compiled on a worker pool while reading goes on, and added to the program on the calling
+ * thread in file order, so every predicate keeps its clauses in source order. Directives run
+ * at their place in that order, with relative file names resolved against the file's directory.
+ * Only a few chunks per worker are in flight at a time, so memory stays bounded whatever the
+ * size of the file.
+ */
+public final class KnowledgeLoader {
+    public static final int DEFAULT_CHUNK_LINES = 4096;
+
+    private KnowledgeLoader() {}
+
+    // Loads a UTF-8 file on the common pool; returns the number of clauses and directives.
+    public static int load(Program program, Path file) throws IOException {
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return load(program, in, ForkJoinPool.commonPool(), DEFAULT_CHUNK_LINES, file.getParent());
+        }
+    }
+
+    public static int load(Program program, Reader source, ExecutorService pool, int chunkLines) throws IOException {
+        return load(program, source, pool, chunkLines, null);
+    }
+
+    // base: the directory relative file names in directives are resolved against (null: the working directory).
+    public static int load(Program program, Reader source, ExecutorService pool, int chunkLines, Path base)
+            throws IOException {
+        if (chunkLines < 1) throw new IllegalArgumentException("chunkLines must be positive: " + chunkLines);
+        int inFlight = 2 * (pool instanceof ForkJoinPool fj ? fj.getParallelism() : Runtime.getRuntime().availableProcessors());
+        BufferedReader in = source instanceof BufferedReader b ? b : new BufferedReader(source, 1 << 16);
+        Util.CommentStripper stripper = new Util.CommentStripper();
+        ArrayDeque<Future<Object[]>> pending = new ArrayDeque<>();
+        List<String> lines = new ArrayList<>(chunkLines);
+        List<Integer> numbers = new ArrayList<>(chunkLines);
+        int count = 0;
+        int lineNo = 0;
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                int before = lines.size();
+                stripper.strip(line, lines);
+                for (int i = before; i < lines.size(); i++) numbers.add(lineNo);
+                if (lines.size() >= chunkLines) {
+                    pending.add(submit(pool, lines, numbers));
+                    lines = new ArrayList<>(chunkLines);
+                    numbers = new ArrayList<>(chunkLines);
+                    while (pending.size() > inFlight) count += merge(program, pending.poll(), base);
+                }
+            }
+            if (!lines.isEmpty()) pending.add(submit(pool, lines, numbers));
+            while (!pending.isEmpty()) count += merge(program, pending.poll(), base);
+        } finally {
+            for (Future<Object[]> f : pending) f.cancel(true);
+        }
+        return count;
+    }
+
+    // Parses and compiles a chunk. Directives are left as text: they act on the program, in order.
+    // A line that fails to parse ends the chunk with its error, thrown when the merge reaches it.
+    private static Future<Object[]> submit(ExecutorService pool, List<String> lines, List<Integer> numbers) {
+        return pool.submit(() -> {
+            Object[] out = new Object[lines.size()];
+            for (int i = 0; i < out.length; i++) {
+                String src = lines.get(i);
+                try {
+                    out[i] = ClauseParser.isDirective(src) ? src : Freshener.compile(ClauseParser.parse(src));
+                } catch (RuntimeException ex) {
+                    out[i] = new RuntimeException("Line " + numbers.get(i) + ": " + ex.getMessage(), ex);
+                    return Arrays.copyOf(out, i + 1);
+                }
+            }
+            return out;
+        });
+    }
+
+    private static int merge(Program program, Future<Object[]> chunk, Path base) throws IOException {
+        Object[] items;
+        try {
+            items = chunk.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException re) throw re;
+            throw new IllegalStateException(ex.getCause());
+        }
+        for (Object item : items) {
+            if (item instanceof Clause c) program.add(c);
+            else if (item instanceof RuntimeException ex) throw ex;
+            else program.consult((String) item, base);
+        }
+        return items.length;
+    }
+}
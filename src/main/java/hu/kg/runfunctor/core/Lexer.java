@@ -1,30 +1,53 @@
 package hu.kg.runfunctor.core;
 
+/**
+ * Tokenizer over a String or any other CharSequence, such as a CharBuffer decoded from a
+ * memory-mapped file. There are no token objects: the current token is its type and a slice of
+ * the input (inside the quotes for strings and things), and its text is made only when the
+ * parser asks for it. Texts come from a small per-thread cache of recent names and strings, so a
+ * name seen before costs no allocation; string literals are unescaped only when they contain a
+ * backslash. Line and block comments between tokens are skipped.
+ */
 final class Lexer {
-    private final String s;
+    private static final int CACHE_SIZE = 1 << 12; // power of two
+    private static final ThreadLocal<String[]> RECENT = ThreadLocal.withInitial(() -> new String[CACHE_SIZE]);
+
+    private final CharSequence s;
+    private final int length;
+    private final String[] recent;
     private int i;
+    private TokType type;
+    private int pos;        // offset of the current token
+    private int start, end; // its text
+    private boolean escaped; // a string literal with a backslash
 
-    Lexer(String s) {
+    Lexer(CharSequence s) {
         this.s = s;
+        this.length = s.length();
+        this.recent = RECENT.get();
         this.i = 0;
     }
 
-    Token next() {
+    // Moves to the next token and returns its type.
+    TokType next() {
         skipWs();
-        if (i >= s.length()) return new Token(TokType.EOF, null, i);
+        pos = start = i;
+        escaped = false;
+        if (i >= length) return end(TokType.EOF, 0);
         char c = s.charAt(i);
-        int start = i;
 
         // Two-char operators
-        if (c == ':' && peek(1) == '-') { i += 2; return new Token(TokType.MINUS, ":-", start); }
-        if (c == '-' && peek(1) == '>') { i += 2; return new Token(TokType.ARROW, "->", start); }
+        if (c == ':' && peek(1) == '-') return end(TokType.MINUS, 2);
+        if (c == '-' && peek(1) == '>') return end(TokType.ARROW, 2);
 
         // Single-char tokens
-        if (c == '(') { i++; return new Token(TokType.LPAREN, "(", start); }
-        if (c == ')') { i++; return new Token(TokType.RPAREN, ")", start); }
-        if (c == ',') { i++; return new Token(TokType.COMMA, ",", start); }
-        if (c == '!') { i++; return new Token(TokType.BANG, "!", start); }
-        if (c == '.') { i++; return new Token(TokType.DOT, ".", start); }
+        if (c == '(') return end(TokType.LPAREN, 1);
+        if (c == ')') return end(TokType.RPAREN, 1);
+        if (c == ',') return end(TokType.COMMA, 1);
+        if (c == '!') return end(TokType.BANG, 1);
+        if (c == '.') return end(TokType.DOT, 1);
+        if (c == '/') return end(TokType.SLASH, 1);
+        if (c == ';') return end(TokType.SEMI, 1);
 
         // String literal
         if (c == '"') return readString();
@@ -32,53 +55,131 @@ final class Lexer {
         if (c == '@') return readThing();
         // Name or variable (may start with *)
         if (isNameStart(c) || c == '*') return readName();
+        // Arity in a predicate indicator (directives only)
+        if (Character.isDigit(c)) return readNumber();
 
         throw err("Unexpected char: " + c);
     }
 
-    private Token readString() {
-        int start = i++;
-        StringBuilder sb = new StringBuilder();
+    TokType type() {
+        return type;
+    }
+
+    // Offset of the current token in the input.
+    int pos() {
+        return pos;
+    }
+
+    // Text of the current token (unescaped for strings), or null at EOF.
+    String text() {
+        if (type == TokType.EOF) return null;
+        if (escaped) return unescape();
+        return cached(start, end);
+    }
+
+    // Whether the current token is the name word, without making its text.
+    boolean is(String word) {
+        int n = end - start;
+        if (type != TokType.NAME || n != word.length()) return false;
+        for (int k = 0; k < n; k++) {
+            if (s.charAt(start + k) != word.charAt(k)) return false;
+        }
+        return true;
+    }
+
+    // 1-based line of the current token, counted on demand (for error messages).
+    int line() {
+        int line = 1;
+        for (int k = 0; k < pos && k < length; k++) {
+            if (s.charAt(k) == '\n') line++;
+        }
+        return line;
+    }
+
+    private TokType end(TokType t, int width) {
+        i += width;
+        end = i;
+        return type = t;
+    }
+
+    private TokType readString() {
+        start = ++i;
+        while (i < length) {
+            char c = s.charAt(i);
+            if (c == '\\') {
+                escaped = true;
+                i += 2;
+            } else if (c == '"') {
+                end = i++;
+                return type = TokType.STRING;
+            } else {
+                i++;
+            }
+        }
+        throw err("Unterminated string literal");
+    }
+
+    // A backslash keeps the next character as it is; the result then goes through
+    // Util.unescapeString, as strings always have.
+    private String unescape() {
+        StringBuilder sb = new StringBuilder(end - start);
         boolean esc = false;
-        while (i < s.length()) {
-            char c = s.charAt(i++);
+        for (int k = start; k < end; k++) {
+            char c = s.charAt(k);
             if (esc) {
                 sb.append(c);
                 esc = false;
             } else if (c == '\\') {
                 esc = true;
-            } else if (c == '"') {
-                return new Token(TokType.STRING, Util.unescapeString(sb.toString()), start);
             } else {
                 sb.append(c);
             }
         }
-        throw err("Unterminated string literal");
+        return Util.unescapeString(sb.toString());
     }
 
-    private Token readThing() {
-        int start = i++;
-        StringBuilder sb = new StringBuilder();
-        while (i < s.length()) {
-            char c = s.charAt(i++);
-            if (c == '@') {
-                return new Token(TokType.THING, sb.toString(), start);
-            } else {
-                sb.append(c);
+    private TokType readThing() {
+        start = ++i;
+        while (i < length) {
+            if (s.charAt(i) == '@') {
+                end = i++;
+                return type = TokType.THING;
             }
+            i++;
         }
         throw err("Unterminated thing literal @...@");
     }
 
-    private Token readName() {
-        int start = i;
+    private TokType readName() {
         i++; // consume first
-        while (i < s.length()) {
-            char c = s.charAt(i);
-            if (isNamePart(c)) i++;
-            else break;
+        while (i < length && isNamePart(s.charAt(i))) i++;
+        end = i;
+        return type = TokType.NAME;
+    }
+
+    private TokType readNumber() {
+        while (i < length && Character.isDigit(s.charAt(i))) i++;
+        end = i;
+        return type = TokType.NUMBER;
+    }
+
+    // The cached String for s[from, to), made and remembered on a miss.
+    private String cached(int from, int to) {
+        int h = 0;
+        for (int k = from; k < to; k++) h = 31 * h + s.charAt(k);
+        int slot = (h ^ (h >>> 16)) & (CACHE_SIZE - 1);
+        String r = recent[slot];
+        if (r != null && r.length() == to - from && r.hashCode() == h && matches(r, from)) return r;
+        r = s.subSequence(from, to).toString();
+        recent[slot] = r;
+        return r;
+    }
+
+    private boolean matches(String r, int from) {
+        for (int k = 0; k < r.length(); k++) {
+            if (s.charAt(from + k) != r.charAt(k)) return false;
         }
-        return new Token(TokType.NAME, s.substring(start, i), start);
+        return true;
     }
 
     private boolean isNameStart(char c) {
@@ -91,16 +192,36 @@ final class Lexer {
 
     private char peek(int k) {
         int j = i + k;
-        return j < s.length() ? s.charAt(j) : '\0';
+        return j < length ? s.charAt(j) : '\0';
     }
 
     private void skipWs() {
-        while (i < s.length() && Character.isWhitespace(s.charAt(i))) i++;
+        while (i < length) {
+            char c = s.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '/' && peek(1) == '/') {
+                while (i < length && s.charAt(i) != '\n') i++;
+            } else if (c == '/' && peek(1) == '*') {
+                pos = i;
+                i += 2;
+                while (i < length && !(s.charAt(i) == '*' && peek(1) == '/')) i++;
+                if (i >= length) throw err("Unterminated comment /*...*/");
+                i += 2;
+            } else {
+                return;
+            }
+        }
     }
 
+    // Reported at the line and offset where the offending token or comment starts.
     private RuntimeException err(String msg) {
-        return new RuntimeException(msg + " at " + i);
+        return new RuntimeException(msg + " at line " + line() + ", offset " + pos);
     }
-}
-
 
+    // The current token as error messages show it, e.g. NAME(foo) or EOF.
+    @Override
+    public String toString() {
+        return type == TokType.EOF ? type.toString() : type + "(" + text() + ")";
+    }
+}
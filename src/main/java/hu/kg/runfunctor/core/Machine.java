@@ -0,0 +1,494 @@
+package hu.kg.runfunctor.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Iterative resolution engine behind Solver.
+ * State is an immutable linked continuation of goals plus an explicit choicepoint stack,
+ * so the Java stack depth stays constant however deep the proof gets.
+ * Each call to next() resumes the suspended search and runs to the next solution.
+ */
+final class Machine {
+    private final Program program;
+    private final Builtins builtins;
+    private final BacktrackEnvironment env;
+    private final List<Variable> queryVars;
+    private final ArrayList<ChoicePoint> choicepoints = new ArrayList<>();
+    private final List<BodyElement> query; // compiled query, null when resumed from another search
+    private Tables tables; // created on the first tabled call unless inherited
+    private Goal goals;
+    private Goal tableRoot; // query goal of a table evaluation: resolved against clauses, not the table
+    private boolean andParallel; // join independent body segments instead of nesting them
+    private boolean forkJoins;   // ... computing the joined segments on the common pool
+    private final boolean linked; // program linked against our builtins: goals carry their targets
+    private SolutionView current; // last solution handed out, still reading our bindings
+    private boolean started;
+    private boolean exhausted;
+    private volatile boolean stopped; // set from another thread to abandon the search
+
+    Machine(Program program, Builtins builtins, List<BodyElement> query) {
+        this(program, builtins, query, null);
+    }
+
+    Machine(Program program, Builtins builtins, List<BodyElement> query, Tables tables) {
+        this.program = program;
+        this.builtins = builtins;
+        this.tables = tables;
+        this.linked = program.isLinkedWith(builtins);
+        this.env = new BacktrackEnvironment();
+        this.queryVars = new ArrayList<>();
+        this.query = Freshener.compileGoals(query, queryVars);
+        env.allocate(queryVars.size());
+        this.goals = Goal.prepend(this.query, 0, null); // query goals live in frame 0
+    }
+
+    // Continues a search from the given bindings and continuation (used by parallel branches).
+    Machine(Program program, Builtins builtins, BacktrackEnvironment env, Goal goals, List<Variable> queryVars) {
+        this.program = program;
+        this.builtins = builtins;
+        this.env = env;
+        this.queryVars = queryVars;
+        this.linked = program.isLinkedWith(builtins);
+        this.query = null;
+        this.goals = goals;
+    }
+
+    // Machine that computes answers for a tabled call from the predicate's clauses.
+    static Machine forTable(Program program, Builtins builtins, Functor call, Tables tables) {
+        Machine m = new Machine(program, builtins, List.of(call), tables);
+        m.tableRoot = m.goals;
+        m.env.setOccursCheck(tables.occursCheck());
+        return m;
+    }
+
+    // Enables AND-parallel evaluation of independent goals; must be called before the first next().
+    void andParallel(boolean fork) {
+        this.andParallel = true;
+        this.forkJoins = fork;
+    }
+
+    // Occurs-check mode of the search (predicates may override it); set before the first next().
+    void occursCheck(OccursCheck mode) {
+        env.setOccursCheck(mode);
+    }
+
+    // Runs to the next solution; false once the search space is exhausted.
+    boolean next() {
+        if (exhausted) return false;
+        detach();
+        if (started && !backtrack()) return finish();
+        if (!started && query != null && tableRoot == null) {
+            Object[] links = linked ? program.links(query, builtins, null, null) : null;
+            goals = activate(query, links, Freshener.segments(query), 0, 0, null);
+        }
+        started = true;
+        return run() || finish();
+    }
+
+    // The current solution over the query variables, resolved lazily (see SolutionView).
+    Map<String, Term> solution() {
+        detach();
+        current = new SolutionView(env, queryVars);
+        return current;
+    }
+
+    private void detach() {
+        if (current != null) {
+            current.freeze();
+            current = null;
+        }
+    }
+
+    // A frame-free term under the current solution's bindings.
+    Term resolve(Term t) {
+        return t.resolve(env);
+    }
+
+    // The i-th query goal under the current solution's bindings.
+    Term resolveQueryGoal(int i) {
+        return ((Functor) query.get(i)).resolve(env);
+    }
+
+    // Abandons the search; later next() calls report no more solutions.
+    void close() {
+        detach();
+        if (!exhausted) finish();
+    }
+
+    // Like close(), but callable from any thread: the search ends at its next step.
+    void stop() {
+        stopped = true;
+    }
+
+    private boolean finish() {
+        exhausted = true;
+        goals = null;
+        for (ChoicePoint cp : choicepoints) {
+            if (cp instanceof JoinGuard guard) guard.join.cancel();
+        }
+        choicepoints.clear();
+        env.undoTo(0);
+        return false;
+    }
+
+    private boolean run() {
+        while (true) {
+            if (stopped) return false;
+            Goal g = goals;
+            if (g == null) return true;
+
+            if (g.element instanceof RunnableAssignment ra) {
+                int mark = env.mark();
+                try {
+                    if (g.target != null) ra.execute(env, g.frame, (BuiltinFunction) g.target);
+                    else ra.execute(env, g.frame, builtins);
+                    goals = g.next;
+                    continue;
+                } catch (RuntimeException ex) {
+                    // runnable failed — backtrack
+                    env.undoTo(mark);
+                }
+            } else if (g.element instanceof Functor goal) {
+                Predicate p = g.target != null ? (Predicate) g.target : program.predicate(goal);
+                if (p == null) {
+                    // unknown predicate — fails
+                } else if (p.relation() != null) {
+                    if (tryRows(g, p.relation().select(goal.args(), g.frame, env), 0, env.mark(), env.top())) continue;
+                } else if (p.isTabled() && g != tableRoot) {
+                    if (callTabled(g, goal)) continue;
+                } else if (tryClauses(g, p.candidates(goal.args(), g.frame, env), 0, env.mark(), env.top())) {
+                    continue;
+                }
+            } else if (g.element instanceof Join) {
+                if (tryJoin(g, 0, env.mark(), env.top())) continue;
+            } else if (g.element instanceof Cut || g.element instanceof Once
+                    || g.element instanceof IfThenElse || g.element instanceof Disjunction) {
+                if (control(g)) continue;
+            } else {
+                throw new IllegalStateException("Unsupported goal: " + g.element);
+            }
+            if (!backtrack()) return false;
+        }
+    }
+
+    // Tries candidates from index i on; on success the continuation becomes the clause body
+    // followed by the rest of the caller's goals, and a choicepoint remembers the remaining alternatives.
+    // Candidates whose head clashes with the call are skipped, so no choicepoint is left behind when
+    // the alternative being tried is the last viable one: deterministic calls then use no choicepoint
+    // and, since nothing can backtrack into them, no trail either (see BacktrackEnvironment).
+    private boolean tryClauses(Goal g, List<Clause> candidates, int i, int mark, int top) {
+        Functor goal = (Functor) g.element;
+        int n = candidates.size();
+        int barrier = choicepoints.size(); // a cut in the clause also drops the choicepoint pushed below
+        i = nextViable(goal, g.frame, candidates, i);
+        while (i < n) {
+            Clause c = candidates.get(i);
+            int next = nextViable(goal, g.frame, candidates, i + 1);
+            env.setBoundary(next < n ? top : boundary());
+            int frame = env.allocate(c.varCount());
+            if (c.unifyHead(goal, g.frame, frame, env)) {
+                if (next < n) choicepoints.add(new ClauseChoice(g, candidates, next, mark, top));
+                goals = activate(c.body(), linked ? c.links(program) : null, c.segments(), frame, barrier, g.next);
+                return true;
+            }
+            if (next == n) return false; // the caller backtracks, discarding the untrailed bindings
+            env.undoTo(mark);
+            env.release(top);
+            i = next;
+        }
+        return false;
+    }
+
+    // Like tryClauses, over the matching rows of a fact relation from position i on.
+    private boolean tryRows(Goal g, FactRelation.Scan scan, int i, int mark, int top) {
+        Functor goal = (Functor) g.element;
+        i = scan.next(i);
+        while (i >= 0) {
+            int next = scan.next(i + 1);
+            env.setBoundary(next >= 0 ? top : boundary());
+            if (scan.bind(i, goal, g.frame, env)) {
+                if (next >= 0) choicepoints.add(new RowChoice(g, scan, next, mark, top));
+                goals = g.next;
+                return true;
+            }
+            if (next < 0) return false;
+            env.undoTo(mark);
+            env.release(top);
+            i = next;
+        }
+        return false;
+    }
+
+    // Index of the first candidate from i on whose head does not clash with the call outright.
+    private int nextViable(Functor goal, int frame, List<Clause> candidates, int i) {
+        List<Term> args = goal.args();
+        for (int n = candidates.size(); i < n; i++) {
+            List<Term> head = candidates.get(i).head().args();
+            boolean clash = false;
+            for (int a = 0; a < head.size() && !clash; a++) {
+                clash = clashes(Unifier.walk(args.get(a), frame, env), head.get(a));
+            }
+            if (!clash) return i;
+        }
+        return i;
+    }
+
+    // True if a bound call argument and a head argument differ in their principal symbol.
+    private static boolean clashes(Term arg, Term head) {
+        if (arg instanceof Variable || head instanceof Variable) return false;
+        if (arg instanceof Functor fa) return !(head instanceof Functor fh) || fa.id() != fh.id();
+        return !arg.equals(head);
+    }
+
+    // First free slot when the newest choicepoint was made: bindings above it need no trailing.
+    private int boundary() {
+        return choicepoints.isEmpty() ? 0 : choicepoints.get(choicepoints.size() - 1).top;
+    }
+
+    // Continuation for a body read through frame. With AND-parallelism on, a body whose segments
+    // turn out to share no unbound variables runs its first segment in place and then joins the
+    // answers of the others, each computed once rather than once per solution of what precedes it.
+    // Table evaluations keep nested execution, since their answers may still grow.
+    // Segments computed on the pool are cancelled if the search backtracks past the activation
+    // without reaching the join, or is closed.
+    private Goal activate(List<BodyElement> body, Object[] links, int[] segments, int frame, int barrier, Goal next) {
+        if (andParallel && segments != null && tables == null) {
+            Join j = Join.plan(program, builtins, env, body, segments, frame, forkJoins);
+            if (j != null) {
+                if (forkJoins) {
+                    choicepoints.add(new JoinGuard(j, env.mark(), env.top()));
+                    env.setBoundary(env.top());
+                }
+                Goal join = new Goal(j, frame, next, null, barrier);
+                return Goal.prepend(body.subList(0, segments[1]), links, frame, barrier, join);
+            }
+        }
+        return Goal.prepend(body, links, frame, barrier, next);
+    }
+
+    // Runs a control construct; false if it fails right away.
+    // A cut goal with a barrier above its clause's (the "then" of an if-then-else, the end of once)
+    // is what commits to the first solution of a condition.
+    private boolean control(Goal g) {
+        if (g.element instanceof Cut) {
+            cutTo(g.barrier);
+            goals = g.next;
+        } else if (g.element instanceof Once o) {
+            int h = choicepoints.size();
+            Goal commit = new Goal(Cut.INSTANCE, g.frame, g.next, null, h);
+            goals = Goal.prepend(o.goals(), null, g.frame, h, commit);
+        } else if (g.element instanceof IfThenElse ite) {
+            int h = choicepoints.size();
+            Goal then = Goal.prepend(ite.then(), null, g.frame, g.barrier, g.next);
+            Goal commit = new Goal(Cut.INSTANCE, g.frame, then, null, h);
+            if (ite.otherwise() != null) {
+                Goal otherwise = Goal.prepend(ite.otherwise(), null, g.frame, g.barrier, g.next);
+                choicepoints.add(new BranchChoice(otherwise, env.mark(), env.top()));
+                env.setBoundary(env.top());
+            }
+            // A cut inside the condition is local to it.
+            goals = Goal.prepend(ite.condition(), null, g.frame, choicepoints.size(), commit);
+        } else if (g.element instanceof Disjunction d) {
+            Goal right = Goal.prepend(d.right(), null, g.frame, g.barrier, g.next);
+            choicepoints.add(new BranchChoice(right, env.mark(), env.top()));
+            env.setBoundary(env.top());
+            goals = Goal.prepend(d.left(), null, g.frame, g.barrier, g.next);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    // Discards the choicepoints above height (cut).
+    private void cutTo(int height) {
+        while (choicepoints.size() > height) choicepoints.remove(choicepoints.size() - 1);
+        env.setBoundary(boundary());
+    }
+
+    // Binds the join's variables to the combo-th combination of segment answers (last segment fastest).
+    private boolean tryJoin(Goal g, long combo, int mark, int top) {
+        Join j = (Join) g.element;
+        env.setBoundary(top);
+        long total = j.combinations(env);
+        if (total == 0) j.cancel(); // a segment without answers: the others are not needed
+        for (; combo < total; combo++) {
+            long rest = combo;
+            boolean ok = true;
+            for (int s = j.size() - 1; s >= 0 && ok; s--) {
+                List<Clause> answers = j.answers(s, env);
+                Clause c = answers.get((int) (rest % answers.size()));
+                rest /= answers.size();
+                int frame = env.allocate(c.varCount());
+                ok = Unifier.unify(j.tuple(s), 0, c.head(), frame, env);
+            }
+            if (ok) {
+                if (combo + 1 < total) choicepoints.add(new JoinChoice(g, combo + 1, mark, top));
+                else env.setBoundary(boundary());
+                goals = g.next;
+                return true;
+            }
+            env.undoTo(mark);
+            env.release(top);
+        }
+        return false;
+    }
+
+    // Answers a tabled call from its table. A complete table is read like a list of facts;
+    // an incomplete one is consumed through a choicepoint that also sees answers added later.
+    private boolean callTabled(Goal g, Functor goal) {
+        if (tables == null) tables = new Tables(program, builtins, env.occursCheck());
+        Tables.Table t = tables.call((Functor) env.resolve(goal, g.frame));
+        if (t.isComplete()) return tryClauses(g, t.answers(), 0, env.mark(), env.top());
+        return tryAnswers(g, t, 0, env.mark(), env.top());
+    }
+
+    private boolean tryAnswers(Goal g, Tables.Table t, int i, int mark, int top) {
+        Functor goal = (Functor) g.element;
+        env.setBoundary(top); // the table may still grow, so the choicepoint always stays
+        for (; i < t.count(); i++) {
+            Clause c = t.answer(i);
+            int frame = env.allocate(c.varCount());
+            if (c.unifyHead(goal, g.frame, frame, env)) {
+                choicepoints.add(new AnswerChoice(g, t, i + 1, mark, top));
+                goals = g.next;
+                return true;
+            }
+            env.undoTo(mark);
+            env.release(top);
+        }
+        return false;
+    }
+
+    // Pops choicepoints until one yields an alternative; false when none is left.
+    private boolean backtrack() {
+        while (!choicepoints.isEmpty()) {
+            ChoicePoint cp = choicepoints.remove(choicepoints.size() - 1);
+            env.undoTo(cp.mark);
+            env.release(cp.top);
+            env.setBoundary(boundary());
+            if (cp.resume(this)) return true;
+        }
+        return false;
+    }
+
+    private abstract static class ChoicePoint {
+        final int mark; // trail mark to restore before resuming
+        final int top;  // first free slot at that point; everything above is discarded
+
+        ChoicePoint(int mark, int top) {
+            this.mark = mark;
+            this.top = top;
+        }
+
+        abstract boolean resume(Machine m);
+    }
+
+    // Remaining clause alternatives of a call.
+    private static final class ClauseChoice extends ChoicePoint {
+        private final Goal goal;
+        private final List<Clause> candidates;
+        private final int next;
+
+        ClauseChoice(Goal goal, List<Clause> candidates, int next, int mark, int top) {
+            super(mark, top);
+            this.goal = goal;
+            this.candidates = candidates;
+            this.next = next;
+        }
+
+        @Override
+        boolean resume(Machine m) {
+            return m.tryClauses(goal, candidates, next, mark, top);
+        }
+    }
+
+    // Remaining matching rows of a fact relation.
+    private static final class RowChoice extends ChoicePoint {
+        private final Goal goal;
+        private final FactRelation.Scan scan;
+        private final int next;
+
+        RowChoice(Goal goal, FactRelation.Scan scan, int next, int mark, int top) {
+            super(mark, top);
+            this.goal = goal;
+            this.scan = scan;
+            this.next = next;
+        }
+
+        @Override
+        boolean resume(Machine m) {
+            return m.tryRows(goal, scan, next, mark, top);
+        }
+    }
+
+    // Remaining combinations of a join.
+    private static final class JoinChoice extends ChoicePoint {
+        private final Goal goal;
+        private final long next;
+
+        JoinChoice(Goal goal, long next, int mark, int top) {
+            super(mark, top);
+            this.goal = goal;
+            this.next = next;
+        }
+
+        @Override
+        boolean resume(Machine m) {
+            return m.tryJoin(goal, next, mark, top);
+        }
+    }
+
+    // Below the first segment of a body whose other segments are computed on the pool:
+    // backtracking into it means the join was left behind.
+    private static final class JoinGuard extends ChoicePoint {
+        private final Join join;
+
+        JoinGuard(Join join, int mark, int top) {
+            super(mark, top);
+            this.join = join;
+        }
+
+        @Override
+        boolean resume(Machine m) {
+            join.cancel();
+            return false;
+        }
+    }
+
+    // The other branch of a disjunction, or the else branch of an if-then-else.
+    private static final class BranchChoice extends ChoicePoint {
+        private final Goal goals;
+
+        BranchChoice(Goal goals, int mark, int top) {
+            super(mark, top);
+            this.goals = goals;
+        }
+
+        @Override
+        boolean resume(Machine m) {
+            m.goals = goals;
+            return true;
+        }
+    }
+
+    // Remaining answers of an incomplete table, including ones added after the call.
+    private static final class AnswerChoice extends ChoicePoint {
+        private final Goal goal;
+        private final Tables.Table table;
+        private final int next;
+
+        AnswerChoice(Goal goal, Tables.Table table, int next, int mark, int top) {
+            super(mark, top);
+            this.goal = goal;
+            this.table = table;
+            this.next = next;
+        }
+
+        @Override
+        boolean resume(Machine m) {
+            return m.tryAnswers(goal, table, next, mark, top);
+        }
+    }
+}
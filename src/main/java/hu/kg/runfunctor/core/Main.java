@@ -1,6 +1,7 @@
 package hu.kg.runfunctor.core;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -8,24 +9,29 @@ import java.util.Map;
 public class Main {
 
 	public static void main(String[] args) throws IOException {
+        if (args.length == 3 && args[0].equals("compile")) {
+            compile(args[1], args[2]);
+            return;
+        }
         if (args.length  == 0 || args.length > 2) {   // we have exactly one or two arguments
             System.out.println("Usage: java -jar functor.jar <query_file> [<knowledgebase_file>] ");
+            System.out.println("       java -jar functor.jar compile <knowledgebase_file> <image_file>");
             return;
         }
         
       
         Program program = new Program();        
 
-        if(args.length == 2) {
-      
-        List<String> lines = Util.splitAndremoveComments(Util.readFileToString(args[1]));          
-            for (String csrc : lines) {   
-                Clause c = ClauseParser.parse(csrc);
-                program.add(c);
-            }
+        if (args.length == 2 && KnowledgeImage.isImage(Path.of(args[1]))) {
+            program = KnowledgeImage.load(Path.of(args[1])); // clauses are decoded as they are used
+        } else if(args.length == 2) {
+            KnowledgeLoader.load(program, Path.of(args[1])); // parsed in parallel, added in file order
         }
                
         Builtins builtins = new Builtins();
+        for (String problem : program.link(builtins)) {
+            System.err.println("Warning: " + problem);
+        }
         Solver solver = new Solver(program, builtins);
         
         String code = Util.readFileToString(args[0]);
@@ -37,13 +43,22 @@ public class Main {
         List<BodyElement> query = QueryParser.parse(lines2.get(0));
         
         solver.solve(query, solution -> {
-            Map<String, Term> visible = Solver.filterQueryVars(solution);
             List<String> parts = new ArrayList<>();
-            for (Map.Entry<String, Term> e : visible.entrySet()) {
+            for (Map.Entry<String, Term> e : solution.entrySet()) {
                 parts.add(e.getKey() + "=" + e.getValue().toSource());
             }
             System.out.println("  {" + String.join(", ", parts) + "}");
         });
     }
 
+    // Parses a knowledge base once and stores it as a binary image that loads without parsing.
+    private static void compile(String source, String image) throws IOException {
+        Program program = new Program();
+        KnowledgeLoader.load(program, Path.of(source));
+        for (String problem : program.link(new Builtins())) {
+            System.err.println("Warning: " + problem);
+        }
+        KnowledgeImage.write(program, Path.of(image));
+        System.out.println("Wrote " + program.allClauses().size() + " clauses to " + image);
+    }
 }
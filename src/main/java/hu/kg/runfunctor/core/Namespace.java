@@ -1,339 +1,221 @@
 package hu.kg.runfunctor.core;
-import java.security.SecureRandom;
+import java.io.*;
 import java.util.*;
 
 /***
  * Renames colliding Prolog variables across namespaces separated by one or more blank lines.
- * - Variables: [A-Z_][A-Za-z0-9_]*, "_" alone is anonymous and never renamed.
+ * - Variables: [A-Z_*][A-Za-z0-9_]* ("*" starts an overrideable variable), "_" alone is anonymous
+ *   and never renamed. Lowercase names (predicates, functors) and builtin names after "!" are not
+ *   variables.
  * - Namespaces: segments of code separated by one or more entirely blank lines (only whitespace),
  *   counted only outside comments/quotes/@...@.
  * - Ignores variables inside: line comments (% ... \n), block comments (/*),
  *   single-quoted atoms ('...'), double-quoted strings ("..."), and @...@ segments.
  * - Collision policy: only variables that appear in a later namespace with a name already used
  *   in any earlier namespace are renamed.
- * - Renaming: X -> X<random ascii letters and digits>, ensuring the new name does NOT collide
- *   with any variable name anywhere in the input (nor with other generated names).
+ * - Renaming: X -> X_n_, n counting up from 1 over the whole input (a trailing "_" of X is not
+ *   doubled). A new name never brings in "__", which marks the engine's own renamed clause
+ *   variables (see Solver.filterQueryVars). Names ending in "_", digits and "_" are reserved for
+ *   the renamer: one written as such in the input is renamed as if it collided, so a new name
+ *   can never meet a name of the input, seen or still to come.
+ * - One pass over the input, written out as it is read; the same input always gives the same output.
  */
 public final class Namespace {
 
     private Namespace() {}
 
     public static String renameCollidingVariables(String prologCode) {
-        // Pass 1: collect variables per namespace and all original variable names.
-        List<Set<String>> nsVars = collectNamespaceVariables(prologCode);
-        Set<String> allOriginalVars = new HashSet<>();
-        for (Set<String> s : nsVars) allOriginalVars.addAll(s);
-
-        // Compute per-namespace rename maps for collisions with any previous namespace.
-        List<Map<String, String>> renameMaps = new ArrayList<>(nsVars.size());
-        Set<String> generatedNames = new HashSet<>();
-        Set<String> seenOriginals = new HashSet<>();
-
-        SecureRandom rng = new SecureRandom();
-
-        for (int i = 0; i < nsVars.size(); i++) {
-            Set<String> vars = nsVars.get(i);
-            Map<String, String> map = new HashMap<>();
-            for (String v : vars) {
-                if (seenOriginals.contains(v)) {
-                    String renamed = uniqueRenamed(v, allOriginalVars, generatedNames, rng);
-                    map.put(v, renamed);
-                    generatedNames.add(renamed);
-                }
-            }
-            renameMaps.add(map);
-            seenOriginals.addAll(vars);
+        StringWriter out = new StringWriter(prologCode.length() + 64);
+        try {
+            renameCollidingVariables(new StringReader(prologCode), out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // strings do not fail
         }
+        return out.toString();
+    }
 
-        // Pass 2: apply renames.
-        return applyRenames(prologCode, renameMaps);
+    public static void renameCollidingVariables(Reader in, Writer out) throws IOException {
+        BufferedWriter w = new BufferedWriter(out, 1 << 13);
+        new Renamer(in instanceof BufferedReader ? in : new BufferedReader(in, 1 << 13), w).run();
+        w.flush();
     }
 
     // ---------- Helpers ----------
 
     private enum Mode { DEFAULT, LINE_COMMENT, BLOCK_COMMENT, SINGLE_QUOTE, DOUBLE_QUOTE, AT_TEXT }
 
-    private static List<Set<String>> collectNamespaceVariables(String s) {
-        List<Set<String>> nsVars = new ArrayList<>();
-        nsVars.add(new HashSet<>()); // start with first namespace
-        int nsIndex = 0;
-
-        Mode mode = Mode.DEFAULT;
-        boolean startNewNsOnNextCode = false;
-        boolean lineBlankCandidate = true; // only tracks DEFAULT mode
-        int n = s.length();
-
-        for (int i = 0; i < n; i++) {
-            char c = s.charAt(i);
-
-            // Mode transitions first, but some depend on DEFAULT checks
-            switch (mode) {
-                case DEFAULT:
-                    // Handle namespace boundary start trigger
-                    if (startNewNsOnNextCode && !Character.isWhitespace(c)) {
-                        nsVars.add(new HashSet<>());
-                        nsIndex++;
-                        startNewNsOnNextCode = false;
-                    }
-
-                    // Comments/quotes/@
-                    if (c == '%') {
-                        mode = Mode.LINE_COMMENT;
-                        // '%' is non-whitespace, mark line as non-blank
-                        lineBlankCandidate = false;
-                        continue;
-                    }
-                    if (c == '/' && i + 1 < n && s.charAt(i + 1) == '*') {
-                        mode = Mode.BLOCK_COMMENT;
-                        lineBlankCandidate = false;
-                        i++; // consume '*'
-                        continue;
-                    }
-                    if (c == '\'') {
-                        mode = Mode.SINGLE_QUOTE;
-                        lineBlankCandidate = false;
-                        continue;
-                    }
-                    if (c == '"') {
-                        mode = Mode.DOUBLE_QUOTE;
-                        lineBlankCandidate = false;
-                        continue;
-                    }
-                    if (c == '@') {
-                        mode = Mode.AT_TEXT;
-                        lineBlankCandidate = false;
-                        continue;
-                    }
-
-                    // Track blank line status on DEFAULT content
-                    if (!Character.isWhitespace(c)) {
-                        lineBlankCandidate = false;
-                    }
+    private static final class Renamer {
+        private final Reader in;
+        private final Writer out;
+        private final Set<String> seen = new HashSet<>();            // names used by earlier namespaces
+        private final Map<String, String> current = new HashMap<>(); // this namespace: name -> output name
+        private final StringBuilder word = new StringBuilder();
+        private int counter;
+        private int la;         // next input char, -1 at the end
+        private char last;      // the char just read
+        private char prev;      // the one before it
+
+        Renamer(Reader in, Writer out) {
+            this.in = in;
+            this.out = out;
+        }
 
-                    // Namespace splitting on a blank line: trigger on LF only
-                    if (c == '\n') {
-                        if (lineBlankCandidate) {
-                            startNewNsOnNextCode = true; // saw a blank line
-                        } else {
+        void run() throws IOException {
+            Mode mode = Mode.DEFAULT;
+            boolean startNewNsOnNextCode = false;
+            boolean lineBlankCandidate = true; // only tracks DEFAULT mode
+            la = in.read();
+            while (la >= 0) {
+                char c = next();
+
+                switch (mode) {
+                    case DEFAULT:
+                        // Handle namespace boundary start trigger
+                        if (startNewNsOnNextCode && !Character.isWhitespace(c)) {
+                            seen.addAll(current.keySet());
+                            current.clear();
                             startNewNsOnNextCode = false;
                         }
-                        lineBlankCandidate = true; // new line starts blank candidate
-                    }
 
-                    // Variable detection
-                    if (isVarStart(c)) {
-                        char prev = (i > 0) ? s.charAt(i - 1) : '\0';
-                        if (!isWordChar(prev)) {
-                            int j = i + 1;
-                            while (j < n && isWordChar(s.charAt(j))) j++;
-                            String var = s.substring(i, j);
-                            if (!"_".equals(var)) {
-                                nsVars.get(nsIndex).add(var);
-                            }
-                            i = j - 1; // advance
+                        // Comments/quotes/@
+                        if (c == '%') {
+                            mode = Mode.LINE_COMMENT;
+                            lineBlankCandidate = false;
+                            out.write(c);
+                            continue;
                         }
-                    }
-                    break;
-
-                case LINE_COMMENT:
-                    if (c == '\n') {
-                        mode = Mode.DEFAULT;
-                        // New line (after comment) is blank candidate until non-whitespace code seen
-                        lineBlankCandidate = true;
-                        startNewNsOnNextCode = false; // a comment line is not blank
-                    }
-                    break;
-
-                case BLOCK_COMMENT:
-                    if (c == '*' && i + 1 < n && s.charAt(i + 1) == '/') {
-                        mode = Mode.DEFAULT;
-                        i++; // consume '/'
-                    }
-                    break;
-
-                case SINGLE_QUOTE:
-                    if (c == '\\') {
-                        // escape next char if any
-                        if (i + 1 < n) i++;
-                    } else if (c == '\'') {
-                        // Prolog often allows '' as escaped quote inside atoms
-                        if (i + 1 < n && s.charAt(i + 1) == '\'') {
-                            i++; // consume second quote, stay in SINGLE_QUOTE
-                        } else {
-                            mode = Mode.DEFAULT;
+                        if (c == '/' && la == '*') {
+                            mode = Mode.BLOCK_COMMENT;
+                            lineBlankCandidate = false;
+                            out.write(c);
+                            out.write(next());
+                            continue;
+                        }
+                        if (c == '\'' || c == '"' || c == '@') {
+                            mode = c == '\'' ? Mode.SINGLE_QUOTE : c == '"' ? Mode.DOUBLE_QUOTE : Mode.AT_TEXT;
+                            lineBlankCandidate = false;
+                            out.write(c);
+                            continue;
                         }
-                    }
-                    break;
-
-                case DOUBLE_QUOTE:
-                    if (c == '\\') {
-                        if (i + 1 < n) i++;
-                    } else if (c == '"') {
-                        mode = Mode.DEFAULT;
-                    }
-                    break;
-
-                case AT_TEXT:
-                    if (c == '@') {
-                        mode = Mode.DEFAULT;
-                    }
-                    // newlines inside @...@ do not affect namespace detection
-                    break;
-            }
-        }
-
-        return nsVars;
-    }
-
-    private static String applyRenames(String s, List<Map<String, String>> renameMaps) {
-        StringBuilder out = new StringBuilder(s.length() + 64);
-
-        Mode mode = Mode.DEFAULT;
-        boolean startNewNsOnNextCode = false;
-        boolean lineBlankCandidate = true;
-        int nsIndex = 0;
-        int n = s.length();
-
-        for (int i = 0; i < n; i++) {
-            char c = s.charAt(i);
-
-            switch (mode) {
-                case DEFAULT:
-                    if (startNewNsOnNextCode && !Character.isWhitespace(c)) {
-                        nsIndex = Math.min(nsIndex + 1, renameMaps.size() - 1);
-                        startNewNsOnNextCode = false;
-                    }
-
-                    if (c == '%') {
-                        mode = Mode.LINE_COMMENT;
-                        lineBlankCandidate = false;
-                        out.append(c);
-                        continue;
-                    }
-                    if (c == '/' && i + 1 < n && s.charAt(i + 1) == '*') {
-                        mode = Mode.BLOCK_COMMENT;
-                        lineBlankCandidate = false;
-                        out.append(c).append(s.charAt(i + 1));
-                        i++;
-                        continue;
-                    }
-                    if (c == '\'') {
-                        mode = Mode.SINGLE_QUOTE;
-                        lineBlankCandidate = false;
-                        out.append(c);
-                        continue;
-                    }
-                    if (c == '"') {
-                        mode = Mode.DOUBLE_QUOTE;
-                        lineBlankCandidate = false;
-                        out.append(c);
-                        continue;
-                    }
-                    if (c == '@') {
-                        mode = Mode.AT_TEXT;
-                        lineBlankCandidate = false;
-                        out.append(c);
-                        continue;
-                    }
 
-                    if (!Character.isWhitespace(c)) {
-                        lineBlankCandidate = false;
-                    }
-                    if (c == '\n') {
-                        if (lineBlankCandidate) {
-                            startNewNsOnNextCode = true;
-                        } else {
-                            startNewNsOnNextCode = false;
+                        // Track blank line status on DEFAULT content
+                        if (!Character.isWhitespace(c)) {
+                            lineBlankCandidate = false;
                         }
-                        lineBlankCandidate = true;
-                        out.append(c);
-                        continue;
-                    }
 
-                    if (isVarStart(c)) {
-                        char prev = (i > 0) ? s.charAt(i - 1) : '\0';
-                        if (!isWordChar(prev)) {
-                            int j = i + 1;
-                            while (j < n && isWordChar(s.charAt(j))) j++;
-                            String var = s.substring(i, j);
-                            String replacement = var;
-                            if (!"_".equals(var)) {
-                                Map<String, String> map = renameMaps.isEmpty() ? Collections.emptyMap() : renameMaps.get(Math.min(nsIndex, renameMaps.size() - 1));
-                                String renamed = map.get(var);
-                                if (renamed != null) {
-                                    replacement = renamed;
-                                }
-                            }
-                            out.append(replacement);
-                            i = j - 1;
+                        // Namespace splitting on a blank line: trigger on LF only
+                        if (c == '\n') {
+                            startNewNsOnNextCode = lineBlankCandidate; // saw a blank line
+                            lineBlankCandidate = true; // new line starts blank candidate
+                            out.write(c);
                             continue;
                         }
-                    }
 
-                    out.append(c);
-                    break;
+                        // Variable detection
+                        if (isWordStart(c) && !isWordChar(prev)) {
+                            boolean builtin = prev == '!';
+                            word.setLength(0);
+                            word.append(c);
+                            while (la >= 0 && isWordChar((char) la)) word.append(next());
+                            String var = word.toString();
+                            out.write("_".equals(var) || builtin || !isVarStart(c) ? var : rename(var));
+                            continue;
+                        }
 
-                case LINE_COMMENT:
-                    out.append(c);
-                    if (c == '\n') {
-                        mode = Mode.DEFAULT;
-                        lineBlankCandidate = true;
-                        startNewNsOnNextCode = false; // comment line is not blank
-                    }
-                    break;
+                        out.write(c);
+                        break;
 
-                case BLOCK_COMMENT:
-                    out.append(c);
-                    if (c == '*' && i + 1 < n && s.charAt(i + 1) == '/') {
-                        out.append(s.charAt(i + 1));
-                        i++;
-                        mode = Mode.DEFAULT;
-                    }
-                    break;
+                    case LINE_COMMENT:
+                        out.write(c);
+                        if (c == '\n') {
+                            mode = Mode.DEFAULT;
+                            // New line (after comment) is blank candidate until non-whitespace code seen
+                            lineBlankCandidate = true;
+                            startNewNsOnNextCode = false; // a comment line is not blank
+                        }
+                        break;
 
-                case SINGLE_QUOTE:
-                    out.append(c);
-                    if (c == '\\') {
-                        if (i + 1 < n) {
-                            out.append(s.charAt(i + 1));
-                            i++;
+                    case BLOCK_COMMENT:
+                        out.write(c);
+                        if (c == '*' && la == '/') {
+                            out.write(next());
+                            mode = Mode.DEFAULT;
                         }
-                    } else if (c == '\'') {
-                        if (i + 1 < n && s.charAt(i + 1) == '\'') {
-                            out.append(s.charAt(i + 1));
-                            i++; // stay in SINGLE_QUOTE
-                        } else {
+                        break;
+
+                    case SINGLE_QUOTE:
+                        out.write(c);
+                        if (c == '\\') {
+                            // escape next char if any
+                            if (la >= 0) out.write(next());
+                        } else if (c == '\'') {
+                            // Prolog often allows '' as escaped quote inside atoms
+                            if (la == '\'') out.write(next()); // stay in SINGLE_QUOTE
+                            else mode = Mode.DEFAULT;
+                        }
+                        break;
+
+                    case DOUBLE_QUOTE:
+                        out.write(c);
+                        if (c == '\\') {
+                            if (la >= 0) out.write(next());
+                        } else if (c == '"') {
                             mode = Mode.DEFAULT;
                         }
-                    }
-                    break;
+                        break;
 
-                case DOUBLE_QUOTE:
-                    out.append(c);
-                    if (c == '\\') {
-                        if (i + 1 < n) {
-                            out.append(s.charAt(i + 1));
-                            i++;
+                    case AT_TEXT:
+                        out.write(c);
+                        // newlines inside @...@ do not affect namespace detection
+                        if (c == '@') {
+                            mode = Mode.DEFAULT;
                         }
-                    } else if (c == '"') {
-                        mode = Mode.DEFAULT;
-                    }
-                    break;
+                        break;
+                }
+            }
+        }
+
+        private char next() throws IOException {
+            char c = (char) la;
+            la = in.read();
+            prev = last;
+            last = c;
+            return c;
+        }
 
-                case AT_TEXT:
-                    out.append(c);
-                    if (c == '@') {
-                        mode = Mode.DEFAULT;
-                    }
-                    break;
+        // The name var stands for in the current namespace, fixed at its first occurrence there.
+        private String rename(String var) {
+            String r = current.get(var);
+            if (r == null) {
+                r = seen.contains(var) || isReserved(var) ? generated(var, ++counter) : var;
+                current.put(var, r);
             }
+            return r;
         }
+    }
 
-        return out.toString();
+    // var_n_, or varn_ when var already ends in "_". The digits between the last two "_" are n,
+    // so names made with different n differ.
+    private static String generated(String var, int n) {
+        return (var.endsWith("_") ? var : var + "_") + n + "_";
+    }
+
+    // Whether name has the form of a generated name: ends in "_", digits and "_".
+    private static boolean isReserved(String name) {
+        int end = name.length() - 1;
+        if (end < 0 || name.charAt(end) != '_') return false;
+        int i = end;
+        while (i > 0 && Character.isDigit(name.charAt(i - 1))) i--;
+        return i < end && i > 0 && name.charAt(i - 1) == '_';
+    }
+
+    // Start of a name or variable, which is read whole either way.
+    private static boolean isWordStart(char c) {
+        return (c >= 'a' && c <= 'z') || isVarStart(c);
     }
 
     private static boolean isVarStart(char c) {
-        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == '*';
+        return (c >= 'A' && c <= 'Z') || c == '_' || c == '*';
     }
 
     private static boolean isWordChar(char c) {
@@ -342,27 +224,4 @@ public final class Namespace {
             || (c >= '0' && c <= '9')
             || c == '_';
     }
-
-    private static final char[] ALNUM = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
-
-    private static String uniqueRenamed(String base, Set<String> allOriginalVars,
-                                        Set<String> generatedNames, SecureRandom rng) {
-        int len = 1;
-        while (true) {
-            String suffix = randomString(rng, len);
-            String candidate = base + suffix;
-            if (!allOriginalVars.contains(candidate) && !generatedNames.contains(candidate)) {
-                return candidate;
-            }
-            len++;
-        }
-    }
-
-    private static String randomString(SecureRandom rng, int len) {
-        char[] buf = new char[len];
-        for (int i = 0; i < len; i++) {
-            buf[i] = ALNUM[rng.nextInt(ALNUM.length)];
-        }
-        return new String(buf);
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,12 @@
+package hu.kg.runfunctor.core;
+
+// How unification guards against binding a variable to a term that contains it.
+public enum OccursCheck {
+    // Every binding of a variable to a compound term is checked (sound, the default).
+    FULL,
+    // No check, as in standard Prolog: cyclic bindings go undetected.
+    NONE,
+    // Checks only bindings that could close a cycle: not those of a head variable at its first
+    // occurrence in the head (it cannot occur in the goal yet), nor those to ground terms.
+    SAFE
+}
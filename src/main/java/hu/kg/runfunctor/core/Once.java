@@ -0,0 +1,37 @@
+package hu.kg.runfunctor.core;
+
+import java.util.List;
+import java.util.Objects;
+
+// once(G1, ..., Gn): the first solution of the conjunction only.
+public final class Once implements BodyElement {
+    private final List<BodyElement> goals;
+
+    public Once(List<BodyElement> goals) {
+        this.goals = List.copyOf(Objects.requireNonNull(goals));
+    }
+
+    public List<BodyElement> goals() {
+        return goals;
+    }
+
+    @Override
+    public boolean isRunnable() {
+        return false;
+    }
+
+    @Override
+    public void execute(BindingEnvironment env, Builtins builtins) {
+        throw new IllegalStateException("once/1 is executed by the solver");
+    }
+
+    @Override
+    public String toSource() {
+        return "once(" + IfThenElse.toSource(goals) + ")";
+    }
+
+    @Override
+    public String toString() {
+        return toSource();
+    }
+}
@@ -0,0 +1,159 @@
+package hu.kg.runfunctor.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * OR-parallel search near the root of the proof tree.
+ * A branch runs deterministic goals in place; at a call with several candidate clauses it forks
+ * the alternatives as work-stealing tasks, each on its own copy of the bindings. Below forkDepth
+ * choice levels, at a tabled call, at a control construct, at a predicate with cuts or at a fact
+ * relation, a branch finishes with an ordinary sequential Machine.
+ * In ordered mode solutions are collected per task and reported in sequential search order;
+ * otherwise they go to the consumer as soon as they are found, one at a time.
+ */
+final class OrParallel {
+    private final Program program;
+    private final Builtins builtins;
+    private final SolutionConsumer consumer;
+    private final int forkDepth;
+    private final boolean ordered;
+    private final OccursCheck occursCheck;
+    private final List<Variable> queryVars = new ArrayList<>();
+    private final boolean linked;
+
+    OrParallel(Program program, Builtins builtins, SolutionConsumer consumer, int forkDepth, boolean ordered,
+               OccursCheck occursCheck) {
+        this.program = program;
+        this.builtins = builtins;
+        this.consumer = consumer;
+        this.forkDepth = forkDepth;
+        this.ordered = ordered;
+        this.occursCheck = occursCheck;
+        this.linked = program.isLinkedWith(builtins);
+    }
+
+    private Object[] links(Clause c) {
+        return linked ? c.links(program) : null;
+    }
+
+    void solve(List<BodyElement> query, ForkJoinPool pool) {
+        List<BodyElement> compiled = Freshener.compileGoals(query, queryVars);
+        BacktrackEnvironment env = new BacktrackEnvironment();
+        env.setOccursCheck(occursCheck); // inherited by the branches' copies
+        env.allocate(queryVars.size());
+        List<Map<String, Term>> found = pool.invoke(new Branch(env, Goal.prepend(compiled, 0, null), 0));
+        for (Map<String, Term> s : found) consumer.onSolution(s);
+    }
+
+    private List<Map<String, Term>> emit(Map<String, Term> solution, List<Map<String, Term>> out) {
+        if (ordered) {
+            out.add(solution);
+        } else {
+            synchronized (consumer) {
+                consumer.onSolution(solution);
+            }
+        }
+        return out;
+    }
+
+    // Runs goals on an environment owned by this task until the search branches or ends.
+    private final class Branch extends RecursiveTask<List<Map<String, Term>>> {
+        private static final long serialVersionUID = 1L;
+        private final BacktrackEnvironment env;
+        private Goal goals;
+        private final int depth;
+
+        Branch(BacktrackEnvironment env, Goal goals, int depth) {
+            this.env = env;
+            this.goals = goals;
+            this.depth = depth;
+        }
+
+        @Override
+        protected List<Map<String, Term>> compute() {
+            List<Map<String, Term>> out = new ArrayList<>();
+            while (true) {
+                Goal g = goals;
+                if (g == null) return emit(env.snapshotResolved(queryVars), out);
+
+                if (g.element instanceof RunnableAssignment ra) {
+                    try {
+                        if (g.target != null) ra.execute(env, g.frame, (BuiltinFunction) g.target);
+                        else ra.execute(env, g.frame, builtins);
+                    } catch (RuntimeException ex) {
+                        return out; // runnable failed — branch fails
+                    }
+                    goals = g.next;
+                } else if (g.element instanceof Functor goal) {
+                    Predicate p = g.target != null ? (Predicate) g.target : program.predicate(goal);
+                    if (p == null) return out;
+                    // A cut prunes the alternatives of the goals before it in its clause and of the
+                    // clause itself, so predicates with cuts are searched in order from here on.
+                    if (p.isTabled() || p.hasCut() || p.relation() != null) return sequential(out);
+                    List<Clause> candidates = p.candidates(goal.args(), g.frame, env);
+                    if (candidates.isEmpty()) return out;
+                    if (candidates.size() > 1) {
+                        if (depth >= forkDepth) return sequential(out);
+                        out.addAll(new Alternatives(env, g, candidates, 0, candidates.size(), depth + 1).compute());
+                        return out;
+                    }
+                    Clause c = candidates.get(0);
+                    int frame = env.allocate(c.varCount());
+                    if (!c.unifyHead(goal, g.frame, frame, env)) return out;
+                    goals = Goal.prepend(c.body(), links(c), frame, 0, g.next);
+                } else {
+                    return sequential(out); // control constructs
+                }
+            }
+        }
+
+        private List<Map<String, Term>> sequential(List<Map<String, Term>> out) {
+            Machine m = new Machine(program, builtins, env, goals, queryVars);
+            while (m.next()) emit(m.solution(), out);
+            return out;
+        }
+    }
+
+    // Candidates [lo, hi) of one call, all tried from the same bindings, which no task modifies.
+    // Ranges are halved until each task tries a single clause.
+    private final class Alternatives extends RecursiveTask<List<Map<String, Term>>> {
+        private static final long serialVersionUID = 1L;
+        private final BacktrackEnvironment snapshot;
+        private final Goal goal;
+        private final List<Clause> candidates;
+        private final int lo, hi;
+        private final int depth;
+
+        Alternatives(BacktrackEnvironment snapshot, Goal goal, List<Clause> candidates, int lo, int hi, int depth) {
+            this.snapshot = snapshot;
+            this.goal = goal;
+            this.candidates = candidates;
+            this.lo = lo;
+            this.hi = hi;
+            this.depth = depth;
+        }
+
+        @Override
+        protected List<Map<String, Term>> compute() {
+            if (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                Alternatives right = new Alternatives(snapshot, goal, candidates, mid, hi, depth);
+                right.fork();
+                List<Map<String, Term>> out = new Alternatives(snapshot, goal, candidates, lo, mid, depth).compute();
+                out.addAll(right.join());
+                return out;
+            }
+            Clause c = candidates.get(lo);
+            BacktrackEnvironment env = snapshot.copy();
+            int frame = env.allocate(c.varCount());
+            if (!c.unifyHead((Functor) goal.element, goal.frame, frame, env)) {
+                return new ArrayList<>();
+            }
+            return new Branch(env, Goal.prepend(c.body(), links(c), frame, 0, goal.next), depth).compute();
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package hu.kg.runfunctor.core;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The clauses of one name/arity pair, in source order, with argument indexes.
+ * An index for an argument position is built the first time that position is bound in a call
+ * (just-in-time indexing); at call time the most selective available bucket is used.
+ * Lookups may run on several solver threads at once; index building is synchronized.
+ * A predicate read from a knowledge-base image is decoded on first use (see KnowledgeImage).
+ */
+final class Predicate {
+    // Below this size a scan is cheaper than building and probing an index.
+    static final int MIN_INDEXED = 8;
+
+    private final String name;
+    private final int arity;
+    private final ClauseList clauses = new ClauseList();
+    private final AtomicReferenceArray<ArgIndex> indexes;
+    private final LongAdder[] selections;
+    private final LongAdder scans = new LongAdder();
+    private int indexesBuilt;
+    private boolean tabled;
+    private boolean cuts; // some clause cuts its alternatives
+    private OccursCheck occursCheck; // for all its clause heads, null to follow the query
+    private FactRelation relation; // columnar facts standing in for the clauses, if any
+    private volatile Runnable loader; // decodes the clauses or rows still in an image, null once done
+    private boolean loading;
+    private int[] imageCalls;          // while in an image: functor ids of the goals its bodies call
+    private String[] imageBuiltins;    // and the builtins they run
+
+    Predicate(String name, int arity) {
+        this.name = name;
+        this.arity = arity;
+        this.indexes = new AtomicReferenceArray<>(arity);
+        this.selections = new LongAdder[arity];
+        for (int i = 0; i < arity; i++) selections[i] = new LongAdder();
+    }
+
+    String name() {
+        return name;
+    }
+
+    int arity() {
+        return arity;
+    }
+
+    List<Clause> clauses() {
+        ensureLoaded();
+        return clauses.view();
+    }
+
+    boolean hasCut() {
+        ensureLoaded();
+        return cuts;
+    }
+
+    FactRelation relation() {
+        ensureLoaded();
+        return relation;
+    }
+
+    // Defers the contents to loader, run once on first access (the loader adds the clauses itself).
+    // calls and builtins are what the deferred bodies call, so link() can check them without decoding.
+    void setLoader(Runnable loader, int[] calls, String[] builtins) {
+        this.imageCalls = calls;
+        this.imageBuiltins = builtins;
+        this.loader = loader;
+    }
+
+    // Functor ids called by clauses still in an image, or null once decoded.
+    int[] imageCalls() {
+        return loader == null ? null : imageCalls;
+    }
+
+    String[] imageBuiltins() {
+        return loader == null ? null : imageBuiltins;
+    }
+
+    private void ensureLoaded() {
+        if (loader != null) load();
+    }
+
+    // Other threads wait here until the contents are complete; the loading thread passes through.
+    private synchronized void load() {
+        if (loader == null || loading) return;
+        loading = true;
+        try {
+            loader.run();
+        } finally {
+            loader = null;
+            loading = false;
+            imageCalls = null;
+            imageBuiltins = null;
+        }
+    }
+
+    OccursCheck occursCheck() {
+        return occursCheck;
+    }
+
+    synchronized FactRelation defineRelation() {
+        if (relation == null) {
+            if (!clauses.view().isEmpty()) throw new IllegalStateException(name + "/" + arity + " already has clauses");
+            relation = new FactRelation(name, arity);
+        }
+        return relation;
+    }
+
+    boolean isTabled() {
+        return tabled;
+    }
+
+    void setTabled(boolean tabled) {
+        this.tabled = tabled;
+    }
+
+    synchronized void setOccursCheck(OccursCheck occursCheck) {
+        this.occursCheck = occursCheck;
+        for (Clause c : clauses.view()) c.setOccursCheck(occursCheck);
+    }
+
+    synchronized void add(Clause c) {
+        ensureLoaded();
+        if (relation != null) throw new IllegalStateException(name + "/" + arity + " is a fact relation: " + c);
+        clauses.add(c);
+        c.setOccursCheck(occursCheck);
+        if (Cut.occursIn(c.body())) cuts = true;
+        List<Term> args = c.head().args();
+        for (int i = 0; i < arity; i++) {
+            ArgIndex ix = indexes.get(i);
+            if (ix != null) ix.add(c, args.get(i));
+        }
+    }
+
+    // Picks the smallest bucket over all bound, indexable argument positions of the call.
+    // The list is a snapshot: clauses added later, even while a choicepoint walks it, do not show up in it.
+    List<Clause> candidates(List<Term> goalArgs, int frame, BindingEnvironment env) {
+        ensureLoaded();
+        List<Clause> all = clauses.view();
+        if (all.size() < MIN_INDEXED) {
+            scans.increment();
+            return all;
+        }
+        List<Clause> best = null;
+        int bestPos = -1;
+        for (int i = 0; i < arity; i++) {
+            Object key = indexKey(Unifier.walk(goalArgs.get(i), frame, env));
+            if (key == null) continue;
+            List<Clause> bucket = index(i).lookup(key);
+            if (best == null || bucket.size() < best.size()) {
+                best = bucket;
+                bestPos = i;
+                if (best.size() <= 1) break;
+            }
+        }
+        if (best == null) {
+            scans.increment();
+            return all;
+        }
+        selections[bestPos].increment();
+        return best;
+    }
+
+    // firstArg must already be dereferenced; null or a variable means "no constraint".
+    List<Clause> candidates(Term firstArg) {
+        ensureLoaded();
+        Object key = firstArg == null || arity == 0 ? null : indexKey(firstArg);
+        if (key == null) return clauses.view();
+        selections[0].increment();
+        return index(0).lookup(key);
+    }
+
+    private ArgIndex index(int pos) {
+        ArgIndex ix = indexes.get(pos);
+        return ix != null ? ix : buildIndex(pos);
+    }
+
+    private synchronized ArgIndex buildIndex(int pos) {
+        ArgIndex ix = indexes.get(pos);
+        if (ix == null) {
+            ix = new ArgIndex();
+            for (Clause c : clauses.view()) ix.add(c, c.head().args().get(pos));
+            indexes.set(pos, ix);
+            indexesBuilt++;
+        }
+        return ix;
+    }
+
+    synchronized IndexStats stats() {
+        ensureLoaded();
+        boolean[] built = new boolean[arity];
+        long[] selected = new long[arity];
+        for (int i = 0; i < arity; i++) {
+            built[i] = indexes.get(i) != null;
+            selected[i] = selections[i].sum();
+        }
+        return new IndexStats(name, arity, clauses.view().size(), built, indexesBuilt, selected, scans.sum());
+    }
+
+    // Constants and Things are value objects and key themselves; compound terms key on name/arity.
+    static Object indexKey(Term t) {
+        if (t instanceof Constant || t instanceof Thing) return t;
+        if (t instanceof Functor f) return f.id();
+        return null;
+    }
+
+    /**
+     * Index over one argument position. Each bucket holds the clauses whose argument has that key
+     * plus every clause with a variable there, so a bucket is always a complete, ordered candidate list.
+     */
+    private static final class ArgIndex {
+        private final Map<Object, ClauseList> buckets = new ConcurrentHashMap<>();
+        private final ClauseList varClauses = new ClauseList();
+
+        void add(Clause c, Term arg) {
+            Object key = indexKey(arg);
+            if (key == null) {
+                varClauses.add(c);
+                for (ClauseList bucket : buckets.values()) bucket.add(c);
+            } else {
+                buckets.computeIfAbsent(key, k -> new ClauseList(varClauses)).add(c);
+            }
+        }
+
+        List<Clause> lookup(Object key) {
+            ClauseList bucket = buckets.get(key);
+            return (bucket != null ? bucket : varClauses).view();
+        }
+    }
+
+    /**
+     * Append-only clause list, written under the predicate's lock and read without it.
+     * An append never touches the slots an earlier view covers, so each view is an immutable
+     * snapshot that a suspended choicepoint can keep walking while clauses are added.
+     */
+    private static final class ClauseList {
+        private Clause[] items;
+        private int size;
+        private volatile View view;
+
+        ClauseList() {
+            items = new Clause[4];
+            view = new View(items, 0);
+        }
+
+        ClauseList(ClauseList other) {
+            items = Arrays.copyOf(other.items, Math.max(4, other.size * 2));
+            size = other.size;
+            view = new View(items, size);
+        }
+
+        void add(Clause c) {
+            if (size == items.length) items = Arrays.copyOf(items, size * 2);
+            items[size++] = c;
+            view = new View(items, size);
+        }
+
+        List<Clause> view() {
+            return view;
+        }
+    }
+
+    private static final class View extends AbstractList<Clause> implements RandomAccess {
+        private final Clause[] items;
+        private final int size;
+
+        View(Clause[] items, int size) {
+            this.items = items;
+            this.size = size;
+        }
+
+        @Override
+        public Clause get(int i) {
+            Objects.checkIndex(i, size);
+            return items[i];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -1,28 +1,208 @@
 package hu.kg.runfunctor.core;
 
+import java.nio.file.Path;
 import java.util.*;
 
 public final class Program {
     private final List<Clause> all = new ArrayList<>();
-    private final Map<String, List<Clause>> index = new HashMap<>();
+    private final List<Predicate> predicates = new ArrayList<>(); // in order of first definition
+    private Predicate[] byId = new Predicate[64]; // indexed by functor symbol id
+    private Builtins linked; // builtins of the last link(), clauses added since are linked on add
 
+    // Clauses are stored compiled: their variables are numbered into frame slots.
     public void add(Clause c) {
+        if (!c.isCompiled()) c = Freshener.compile(c);
         all.add(c);
-        String key = key(c.head().name(), c.head().args().size());
-        index.computeIfAbsent(key, k -> new ArrayList<>()).add(c);
+        define(c.head().id()).add(c);
+        if (linked != null) link(c, linked, null);
+    }
+
+    // Adds one knowledge-base line: a clause, or a directive such as ":- table ancestor/2."
+    public void consult(String source) {
+        consult(source, null);
+    }
+
+    // base: the directory of the knowledge base the line comes from, which relative file names in
+    // directives are resolved against (null: the working directory).
+    public void consult(String source, Path base) {
+        if (ClauseParser.isDirective(source)) {
+            ClauseParser.parseDirective(source, this, base);
+        } else {
+            add(ClauseParser.parse(source));
+        }
+    }
+
+    // Calls to a tabled predicate are answered from variant-keyed answer tables,
+    // which makes left recursion terminate and stops re-deriving shared subgoals.
+    public void table(String name, int arity) {
+        define(Symbols.functor(name, arity)).setTabled(true);
+    }
+
+    // Occurs-check mode for unifying calls with the clause heads of name/arity, whatever the
+    // query's mode; null makes the predicate follow the query again.
+    public void setOccursCheck(String name, int arity, OccursCheck mode) {
+        define(Symbols.functor(name, arity)).setOccursCheck(mode);
+    }
+
+    // The columnar fact store behind name/arity, created empty on first use. Such a predicate is
+    // answered from its rows only and cannot have clauses; fill it with load() or add().
+    public FactRelation relation(String name, int arity) {
+        return define(Symbols.functor(name, arity)).defineRelation();
+    }
+
+    public boolean isTabled(String name, int arity) {
+        Predicate p = lookup(name, arity);
+        return p != null && p.isTabled();
     }
 
     public List<Clause> clauses(String name, int arity) {
-        return index.getOrDefault(key(name, arity), List.of());
+        Predicate p = lookup(name, arity);
+        return p == null ? List.of() : Collections.unmodifiableList(p.clauses());
     }
 
+    // Candidate clauses for a call whose first argument is already dereferenced.
+    // A bound Constant, Thing or compound first argument selects only the clauses that can match it.
+    public List<Clause> clauses(String name, int arity, Term firstArg) {
+        Predicate p = lookup(name, arity);
+        return p == null ? List.of() : Collections.unmodifiableList(p.candidates(firstArg));
+    }
+
+    // Candidate clauses for a call, chosen through the most selective argument index
+    // (indexes are built on demand for every argument position the call has bound).
+    public List<Clause> clauses(Functor goal, BindingEnvironment env) {
+        Predicate p = predicate(goal);
+        return p == null ? List.of() : Collections.unmodifiableList(p.candidates(goal.args(), 0, env));
+    }
+
+    // Link step, run after loading: resolves every body goal of every clause to its predicate and
+    // every runnable to its builtin function, so calls skip the lookup. Returns the calls that cannot
+    // be resolved (they would fail, or throw, when reached). Clauses added later are linked as they
+    // are added; call link() again to re-check calls to predicates that were undefined at the time.
+    // Predicates still in an image are checked from the calls stored with them, and decoded (to be
+    // reported clause by clause) only when one of those calls does not resolve.
+    public List<String> link(Builtins builtins) {
+        Objects.requireNonNull(builtins);
+        linked = builtins;
+        for (Predicate p : predicates) {
+            if (!resolves(p.imageCalls(), p.imageBuiltins(), builtins)) p.clauses();
+        }
+        List<String> problems = new ArrayList<>();
+        for (Clause c : all) link(c, builtins, problems);
+        return problems;
+    }
+
+    private boolean resolves(int[] calls, String[] builtinNames, Builtins builtins) {
+        if (calls != null) {
+            for (int id : calls) {
+                if (id >= byId.length || byId[id] == null) return false;
+            }
+        }
+        if (builtinNames != null) {
+            for (String name : builtinNames) {
+                if (builtins.get(name) == null) return false;
+            }
+        }
+        return true;
+    }
+
+    boolean isLinkedWith(Builtins builtins) {
+        return linked == builtins;
+    }
+
+    // Link targets for a body (a clause body or a query), reporting unresolved calls to problems if given.
+    Object[] links(List<BodyElement> body, Builtins builtins, List<String> problems, Object where) {
+        Object[] links = new Object[body.size()];
+        for (int i = 0; i < links.length; i++) {
+            BodyElement be = body.get(i);
+            if (be instanceof Functor f) {
+                links[i] = predicate(f);
+                if (links[i] == null && problems != null) {
+                    problems.add("Undefined predicate " + f.name() + "/" + f.args().size() + " in: " + where);
+                }
+            } else if (be instanceof RunnableAssignment ra) {
+                links[i] = builtins.get(ra.builtinName());
+                if (links[i] == null && problems != null) {
+                    problems.add("Unknown builtin " + ra.builtinName() + " in: " + where);
+                }
+            } else if (problems != null) {
+                // Goals inside control constructs are resolved when run, but checked all the same.
+                for (List<BodyElement> nested : nestedGoals(be)) links(nested, builtins, problems, where);
+            }
+        }
+        return links;
+    }
+
+    static List<List<BodyElement>> nestedGoals(BodyElement be) {
+        if (be instanceof Once o) return List.of(o.goals());
+        if (be instanceof Disjunction d) return List.of(d.left(), d.right());
+        if (be instanceof IfThenElse ite) {
+            return ite.otherwise() == null ? List.of(ite.condition(), ite.then())
+                    : List.of(ite.condition(), ite.then(), ite.otherwise());
+        }
+        return List.of();
+    }
+
+    private void link(Clause c, Builtins builtins, List<String> problems) {
+        c.setLinks(this, c.body().isEmpty() ? null : links(c.body(), builtins, problems, c));
+    }
+
+    Predicate predicate(Functor goal) {
+        int id = goal.id();
+        return id < byId.length ? byId[id] : null;
+    }
+
+    // Compiles the head unification of every predicate defined so far to generated JVM classes.
+    // Optional: returns false (and keeps interpreting) when no Java compiler is available.
+    // Clauses added afterwards are interpreted until compile() is called again.
+    public boolean compile() {
+        return HeadCompiler.compile(predicates);
+    }
+
+    public IndexStats indexStats(String name, int arity) {
+        Predicate p = lookup(name, arity);
+        return p == null ? null : p.stats();
+    }
+
+    public List<IndexStats> indexStats() {
+        List<IndexStats> out = new ArrayList<>(predicates.size());
+        for (Predicate p : predicates) out.add(p.stats());
+        return out;
+    }
+
+    // Clauses decoded lazily from an image are listed in the order they were decoded.
     public List<Clause> allClauses() {
+        for (Predicate p : predicates) p.clauses(); // decodes what is still in an image
         return Collections.unmodifiableList(all);
     }
 
-    private static String key(String name, int arity) {
-        return name + "/" + arity;
+    List<Predicate> predicates() {
+        return predicates;
     }
-}
 
+    Predicate define(String name, int arity) {
+        return define(Symbols.functor(name, arity));
+    }
 
+    // Adds a clause decoded from an image (already compiled), possibly from a solver thread.
+    synchronized void addDecoded(Predicate p, Clause c) {
+        all.add(c);
+        p.add(c);
+        if (linked != null) link(c, linked, null);
+    }
+
+    private Predicate lookup(String name, int arity) {
+        int id = Symbols.lookupFunctor(name, arity);
+        return id >= 0 && id < byId.length ? byId[id] : null;
+    }
+
+    private Predicate define(int id) {
+        if (id >= byId.length) byId = Arrays.copyOf(byId, Math.max(id + 1, byId.length * 2));
+        Predicate p = byId[id];
+        if (p == null) {
+            p = new Predicate(Symbols.functorName(id), Symbols.functorArity(id));
+            byId[id] = p;
+            predicates.add(p);
+        }
+        return p;
+    }
+}
@@ -5,11 +5,10 @@ import java.util.List;
 
 public final class QueryParser {
     private final Lexer lex;
-    private Token la;
 
     private QueryParser(String input) {
         this.lex = new Lexer(input);
-        this.la = lex.next();
+        lex.next();
     }
 
     public static List<BodyElement> parse(String input) {
@@ -30,6 +29,7 @@ public final class QueryParser {
 
     private BodyElement parseBodyElement() {
         if (acceptBang()) {
+            if (lex.type() != TokType.NAME) return Cut.INSTANCE; // a lone '!' is a cut
             String name = expectName("builtin name after '!'");
             expect("(");
             List<Term> args = new ArrayList<>();
@@ -42,11 +42,44 @@ public final class QueryParser {
             expect("->");
             Variable var = parseVariableFromName(expectName("variable after '->'"));
             return new RunnableAssignment(name, args, var);
+        } else if (accept("(")) {
+            List<BodyElement> goals = parseAlternatives();
+            expect(")");
+            if (goals.size() != 1) throw err("Expected '->' or ';' in parenthesized goals");
+            return goals.get(0);
+        } else if (lex.is("once")) {
+            consume();
+            expect("(");
+            List<BodyElement> goals = parseConjunction();
+            expect(")");
+            return new Once(goals);
         } else {
             return parseFunctor();
         }
     }
 
+    private List<BodyElement> parseConjunction() {
+        List<BodyElement> goals = new ArrayList<>();
+        do {
+            goals.add(parseBodyElement());
+        } while (accept(","));
+        return goals;
+    }
+
+    // "C -> T ; E", "A ; B" or a plain conjunction; a trailing else may chain further if-then-elses.
+    private List<BodyElement> parseAlternatives() {
+        List<BodyElement> first = parseConjunction();
+        if (accept("->")) {
+            List<BodyElement> then = parseConjunction();
+            List<BodyElement> otherwise = accept(";") ? parseAlternatives() : null;
+            return List.of(new IfThenElse(first, then, otherwise));
+        }
+        if (accept(";")) {
+            return List.of(new Disjunction(first, parseAlternatives()));
+        }
+        return first;
+    }
+
     private Functor parseFunctor() {
         String name = expectName("functor name");
         expect("(");
@@ -61,16 +94,16 @@ public final class QueryParser {
     }
 
     private Term parseTerm() {
-        if (la.type == TokType.STRING) {
-            String v = la.text;
+        if (lex.type() == TokType.STRING) {
+            String v = lex.text();
             consume();
-            return new Constant(v);
-        } else if (la.type == TokType.THING) {
-            String v = la.text;
+            return Constant.of(v);
+        } else if (lex.type() == TokType.THING) {
+            String v = lex.text();
             consume();
-            return new Thing(v);
-        } else if (la.type == TokType.NAME) {
-            String name = la.text;
+            return Thing.of(v);
+        } else if (lex.type() == TokType.NAME) {
+            String name = lex.text();
             consume();
             if (accept("(")) {
                 List<Term> args = new ArrayList<>();
@@ -80,12 +113,12 @@ public final class QueryParser {
                     } while (accept(","));
                     expect(")");
                 }
-                return new Functor(name, args);
+                return Symbols.compound(new Functor(name, args));
             } else {
                 return parseVariableFromName(name);
             }
         } else {
-            throw err("Expected term, got: " + la);
+            throw err("Expected term, got: " + lex);
         }
     }
 
@@ -94,32 +127,33 @@ public final class QueryParser {
     }
 
     private boolean accept(String sym) {
-        if (sym.equals("->") && la.type == TokType.ARROW) { consume(); return true; }
-        if (sym.equals("(") && la.type == TokType.LPAREN) { consume(); return true; }
-        if (sym.equals(")") && la.type == TokType.RPAREN) { consume(); return true; }
-        if (sym.equals(",") && la.type == TokType.COMMA) { consume(); return true; }
-        if (sym.equals(".") && la.type == TokType.DOT) { consume(); return true; }
+        if (sym.equals("->") && lex.type() == TokType.ARROW) { consume(); return true; }
+        if (sym.equals("(") && lex.type() == TokType.LPAREN) { consume(); return true; }
+        if (sym.equals(")") && lex.type() == TokType.RPAREN) { consume(); return true; }
+        if (sym.equals(",") && lex.type() == TokType.COMMA) { consume(); return true; }
+        if (sym.equals(".") && lex.type() == TokType.DOT) { consume(); return true; }
+        if (sym.equals(";") && lex.type() == TokType.SEMI) { consume(); return true; }
         return false;
     }
 
     private boolean acceptBang() {
-        if (la.type == TokType.BANG) { consume(); return true; }
+        if (lex.type() == TokType.BANG) { consume(); return true; }
         return false;
     }
 
     private void expect(String sym) {
-        if (!accept(sym)) throw err("Expected '" + sym + "', got: " + la);
+        if (!accept(sym)) throw err("Expected '" + sym + "', got: " + lex);
     }
 
     private String expectName(String ctx) {
-        if (la.type != TokType.NAME) throw err("Expected " + ctx + ", got: " + la);
-        String n = la.text;
+        if (lex.type() != TokType.NAME) throw err("Expected " + ctx + ", got: " + lex);
+        String n = lex.text();
         consume();
         return n;
     }
 
     private void consume() {
-        la = lex.next();
+        lex.next();
     }
 
     private RuntimeException err(String msg) {
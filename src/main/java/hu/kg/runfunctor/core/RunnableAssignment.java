@@ -43,6 +43,23 @@ public final class RunnableAssignment implements BodyElement {
         env.bindFromRunnable(target, res);
     }
 
+    // Runs the assignment as part of a clause activation whose variables live at frame.
+    void execute(BacktrackEnvironment env, int frame, Builtins builtins) {
+        BuiltinFunction fn = builtins.get(builtinName);
+        if (fn == null) {
+            throw new RuntimeException("Unknown builtin: " + builtinName);
+        }
+        execute(env, frame, fn);
+    }
+
+    // As above, with the builtin already looked up (linked).
+    void execute(BacktrackEnvironment env, int frame, BuiltinFunction fn) {
+        List<Term> resolved = new ArrayList<>(args.size());
+        for (Term t : args) resolved.add(env.resolve(t, frame));
+        Term res = fn.apply(resolved, env);
+        env.assign(frame + target.slot(), target, res);
+    }
+
     @Override
     public String toSource() {
         StringBuilder sb = new StringBuilder();
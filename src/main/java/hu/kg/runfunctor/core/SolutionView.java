@@ -0,0 +1,104 @@
+package hu.kg.runfunctor.core;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * One solution as an unmodifiable map from the bound query variables to their values.
+ * A value is resolved from the machine's bindings only when it is first read; before the search
+ * moves on, the machine freezes the view, resolving whatever has not been read yet.
+ */
+final class SolutionView extends AbstractMap<String, Term> {
+    private final Variable[] vars;  // bound query variables, in query order
+    private final Term[] values;    // resolved values, null until read
+    private BacktrackEnvironment env; // null once frozen
+
+    SolutionView(BacktrackEnvironment env, List<Variable> queryVars) {
+        int n = 0;
+        Variable[] bound = new Variable[queryVars.size()];
+        for (Variable v : queryVars) {
+            if (env.isBound(v)) bound[n++] = v;
+        }
+        this.vars = n == bound.length ? bound : Arrays.copyOf(bound, n);
+        this.values = new Term[n];
+        this.env = env;
+    }
+
+    // Resolves the values not read so far; the bindings may change after this.
+    void freeze() {
+        if (env == null) return;
+        for (int i = 0; i < values.length; i++) value(i);
+        env = null;
+    }
+
+    boolean isFrozen() {
+        return env == null;
+    }
+
+    private Term value(int i) {
+        Term t = values[i];
+        if (t == null) {
+            t = env.get(vars[i]).resolve(env);
+            values[i] = t;
+        }
+        return t;
+    }
+
+    private int indexOf(Object name) {
+        for (int i = 0; i < vars.length; i++) {
+            if (vars[i].name().equals(name)) return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public Term get(Object name) {
+        int i = indexOf(name);
+        return i < 0 ? null : value(i);
+    }
+
+    @Override
+    public boolean containsKey(Object name) {
+        return indexOf(name) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return vars.length;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Term>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Map.Entry<String, Term>> iterator() {
+                return new Iterator<>() {
+                    private int i;
+
+                    @Override
+                    public boolean hasNext() {
+                        return i < vars.length;
+                    }
+
+                    @Override
+                    public Map.Entry<String, Term> next() {
+                        if (i >= vars.length) throw new NoSuchElementException();
+                        int k = i++;
+                        return new SimpleImmutableEntry<>(vars[k].name(), value(k));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return vars.length;
+            }
+        };
+    }
+}
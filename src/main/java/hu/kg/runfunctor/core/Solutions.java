@@ -0,0 +1,54 @@
+package hu.kg.runfunctor.core;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazy, pull-based view of a query's solutions.
+ * Each solution is computed only when asked for, by resuming the suspended search;
+ * close() abandons the rest of the search and releases its bindings and choicepoints.
+ */
+public final class Solutions implements Iterator<Map<String, Term>>, AutoCloseable {
+    private final Machine machine;
+    private boolean fetched;
+    private boolean available;
+
+    Solutions(Machine machine) {
+        this.machine = machine;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!fetched) {
+            available = machine.next();
+            fetched = true;
+        }
+        return available;
+    }
+
+    @Override
+    public Map<String, Term> next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        fetched = false;
+        return machine.solution();
+    }
+
+    // Sequential stream over the remaining solutions; closing the stream closes this.
+    public Stream<Map<String, Term>> stream() {
+        Spliterator<Map<String, Term>> split = Spliterators.spliteratorUnknownSize(this,
+                Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(split, false).onClose(this::close);
+    }
+
+    @Override
+    public void close() {
+        machine.close();
+        fetched = true;
+        available = false;
+    }
+}
@@ -1,88 +1,88 @@
 package hu.kg.runfunctor.core;
 
-import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 
 
 
 public final class Solver {
+    public static final int DEFAULT_FORK_DEPTH = 8;
+
     private final Program program;
     private final Builtins builtins;
+    private boolean andParallel;
+    private OccursCheck occursCheck = OccursCheck.FULL;
 
     public Solver(Program program, Builtins builtins) {
         this.program = Objects.requireNonNull(program);
         this.builtins = Objects.requireNonNull(builtins);
     }
 
-    // Existing multi-solution API (unchanged behavior)
-    public void solve(List<BodyElement> query, SolutionConsumer consumer) {
-        BacktrackEnvironment env = new BacktrackEnvironment();
-        dfs(query, env, consumer, true); // explore all
+    // When on, conjunctions whose goals share no unbound variables are not run as nested loops:
+    // each independent group is evaluated once, concurrently, and the answers are combined as a
+    // cross product (in the same order). The groups are evaluated eagerly, so this suits queries
+    // whose goals have finitely many solutions. Off by default.
+    public void setAndParallel(boolean andParallel) {
+        this.andParallel = andParallel;
     }
 
-    // New: return only the first solution (if any)
-    public Optional<Map<String, Term>> solveFirst(List<BodyElement> query) {
-        BacktrackEnvironment env = new BacktrackEnvironment();
-        final Map<String, Term>[] box = new Map[1];
-        boolean found = dfs(query, env, sol -> box[0] = sol, true); // stop after first
-        return found ? Optional.of(filterQueryVars(box[0])) : Optional.empty();
+    // Occurs-check mode of the queries started from now on; Program.setOccursCheck overrides it
+    // for single predicates. NONE is standard Prolog; SAFE gives the same answers as FULL but skips
+    // the bindings that cannot create a cycle, e.g. a clause's fresh variables taking a goal's list.
+    public void setOccursCheck(OccursCheck occursCheck) {
+        this.occursCheck = Objects.requireNonNull(occursCheck);
+    }
+
+    private Machine machine(List<BodyElement> query) {
+        Machine m = new Machine(program, builtins, query);
+        m.occursCheck(occursCheck);
+        if (andParallel) m.andParallel(true);
+        return m;
     }
 
-    // Depth-first search with an early-stop flag.
-    // Returns true if a solution was produced and stopAfterFirst=true => callers should stop.
-    private boolean dfs(List<BodyElement> goals,
-                        BacktrackEnvironment env,
-                        SolutionConsumer consumer,
-                        boolean stopAfterFirst) {
-        if (goals.isEmpty()) {
-            consumer.onSolution(env.snapshotResolved());
-            return stopAfterFirst; // true => tell caller to stop exploring
+    // Existing multi-solution API: reports every solution in search order
+    public void solve(List<BodyElement> query, SolutionConsumer consumer) {
+        Machine m = machine(query);
+        while (m.next()) {
+            consumer.onSolution(m.solution());
         }
+    }
 
-        BodyElement g = goals.get(0);
-        List<BodyElement> rest = goals.subList(1, goals.size());
+    // New: return only the first solution (if any). The search is closed before returning, so the
+    // result is fully resolved and does not keep the machine's bindings and stacks reachable.
+    public Optional<Map<String, Term>> solveFirst(List<BodyElement> query) {
+        Machine m = machine(query);
+        if (!m.next()) return Optional.empty();
+        Map<String, Term> first = m.solution();
+        m.close(); // freezes the view
+        return Optional.of(first);
+    }
 
-        if (g instanceof RunnableAssignment ra) {
-            int mark = env.mark();
-            try {
-                ra.execute(env, builtins);
-                if (dfs(rest, env, consumer, stopAfterFirst)) {
-                    env.undoTo(mark);
-                    return true;
-                }
-            } catch (RuntimeException ex) {
-                // runnable failed — backtrack
-            }
-            env.undoTo(mark);
-            return false;
-        }
+    // Lazy variant: solutions are computed one at a time as the caller pulls them,
+    // e.g. solver.solutions(query).stream().skip(20).limit(10). Close it to abandon the search early.
+    public Solutions solutions(List<BodyElement> query) {
+        return new Solutions(machine(query));
+    }
 
-        if (!(g instanceof Functor goal)) {
-            throw new IllegalStateException("Unsupported goal: " + g);
-        }
+    // Opt-in parallel variant of solve for exhaustive queries: alternatives within the first
+    // forkDepth choice levels are searched concurrently on the pool. The consumer is called from
+    // pool threads, one call at a time; solutions arrive in no particular order unless ordered is set,
+    // in which case they are delivered in sequential search order after the search completes.
+    public void solveParallel(List<BodyElement> query, SolutionConsumer consumer, ForkJoinPool pool, int forkDepth, boolean ordered) {
+        if (forkDepth < 0) throw new IllegalArgumentException("forkDepth must not be negative: " + forkDepth);
+        new OrParallel(program, builtins, consumer, forkDepth, ordered, occursCheck).solve(query, pool);
+    }
 
-        List<Clause> choices = program.clauses(goal.name(), goal.args().size());
-        for (Clause c0 : choices) {
-            Clause c = Freshener.freshen(c0);
-            int mark = env.mark();
-            if (Unifier.unify(goal, c.head(), env)) {
-                List<BodyElement> newGoals = new ArrayList<>(c.body().size() + rest.size());
-                newGoals.addAll(c.body());
-                newGoals.addAll(rest);
-                if (dfs(newGoals, env, consumer, stopAfterFirst)) {
-                    env.undoTo(mark);
-                    return true;
-                }
-            }
-            env.undoTo(mark);
-        }
-        return false;
+    public void solveParallel(List<BodyElement> query, SolutionConsumer consumer) {
+        solveParallel(query, consumer, ForkJoinPool.commonPool(), DEFAULT_FORK_DEPTH, false);
     }
 
+    // Drops renamed clause variables ("X__12") from a binding map. Solutions reported by the
+    // solver hold only the query's own variables, so they pass through unchanged.
     public static Map<String, Term> filterQueryVars(Map<String, Term> solution) {
         LinkedHashMap<String, Term> out = new LinkedHashMap<>();
         for (Map.Entry<String, Term> e : solution.entrySet()) {
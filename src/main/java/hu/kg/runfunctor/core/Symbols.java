@@ -0,0 +1,112 @@
+package hu.kg.runfunctor.core;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide symbol table.
+ * Constants and Things read by the parsers or loaded from files and images are interned to one
+ * canonical instance per value, so repeated values are stored once and compare by reference.
+ * Values computed while solving, such as CONCAT results, are not: the table is never pruned, and
+ * a long-running solver would grow it without bound.
+ * Functor name/arity pairs get dense int ids, used by unification and by predicate lookup.
+ * With hash-consing switched on, the parsers also share structurally identical ground compound
+ * terms as one canonical instance, which then compares by reference too.
+ * Ids are never reused; the table only grows.
+ */
+public final class Symbols {
+    private static final ConcurrentHashMap<String, Constant> constants = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Thing> things = new ConcurrentHashMap<>();
+    private static final AtomicInteger atomCount = new AtomicInteger(); // ids shared by constants and things
+    private static final ConcurrentHashMap<String, int[]> functorIds = new ConcurrentHashMap<>(); // name -> id by arity, -1 if none
+    private static String[] names = new String[256];
+    private static int[] arities = new int[256];
+    private static int functorCount;
+    private static final ConcurrentHashMap<Functor, Functor> compounds = new ConcurrentHashMap<>();
+    private static volatile boolean hashConsing;
+
+    private Symbols() {}
+
+    public static Constant constant(String value) {
+        Constant c = constants.get(value);
+        return c != null ? c : constants.computeIfAbsent(value, v -> new Constant(v, atomCount.getAndIncrement()));
+    }
+
+    public static Thing thing(String content) {
+        Thing t = things.get(content);
+        return t != null ? t : things.computeIfAbsent(content, v -> new Thing(v, atomCount.getAndIncrement()));
+    }
+
+    // Id of name/arity, assigned on first use.
+    public static int functor(String name, int arity) {
+        int[] ids = functorIds.get(name);
+        if (ids != null && arity < ids.length && ids[arity] >= 0) return ids[arity];
+        return register(name, arity);
+    }
+
+    // Id of name/arity, or -1 if no such functor has been seen.
+    public static int lookupFunctor(String name, int arity) {
+        int[] ids = functorIds.get(name);
+        return ids != null && arity < ids.length ? ids[arity] : -1;
+    }
+
+    public static synchronized String functorName(int id) {
+        return names[id];
+    }
+
+    public static synchronized int functorArity(int id) {
+        return arities[id];
+    }
+
+    public static synchronized int functorCount() {
+        return functorCount;
+    }
+
+    public static int atomCount() {
+        return atomCount.get();
+    }
+
+    // Off by default; terms read while it is off stay unshared.
+    public static void setHashConsing(boolean on) {
+        hashConsing = on;
+    }
+
+    public static boolean isHashConsing() {
+        return hashConsing;
+    }
+
+    public static int compoundCount() {
+        return compounds.size();
+    }
+
+    // The canonical instance of a ground compound term when hash-consing is on, else f itself.
+    // Built bottom-up (as the parsers do), the arguments of a canonical term are canonical too.
+    static Term compound(Functor f) {
+        if (!hashConsing || !f.isGround()) return f;
+        Functor c = compounds.get(f);
+        return c != null ? c : compounds.computeIfAbsent(f, k -> {
+            k.canonical = true;
+            return k;
+        });
+    }
+
+    // Readers see a published array only after its entries are filled in.
+    private static synchronized int register(String name, int arity) {
+        int[] ids = functorIds.get(name);
+        if (ids != null && arity < ids.length && ids[arity] >= 0) return ids[arity];
+        int[] grown = ids == null ? new int[arity + 1] : Arrays.copyOf(ids, Math.max(ids.length, arity + 1));
+        if (ids == null) Arrays.fill(grown, -1);
+        else Arrays.fill(grown, ids.length, grown.length, -1);
+        int id = functorCount++;
+        if (id == names.length) {
+            names = Arrays.copyOf(names, id * 2);
+            arities = Arrays.copyOf(arities, id * 2);
+        }
+        names[id] = name;
+        arities[id] = arity;
+        grown[arity] = id;
+        functorIds.put(name, grown);
+        return id;
+    }
+}
@@ -0,0 +1,171 @@
+package hu.kg.runfunctor.core;
+
+import java.util.*;
+
+/**
+ * Answer tables for tabled predicates, shared by a query's machine and the machines it spawns.
+ *
+ * Calls are keyed by variant (the resolved call with its variables numbered in order).
+ * A new call is evaluated to a fixpoint by re-running it in a sub-machine until no table gains
+ * answers. A call that meets a variant still under evaluation consumes that table's answers
+ * instead of recursing, and is linked to it: such calls form a strongly connected component whose
+ * oldest member (the leader) iterates, and the whole component is completed together.
+ * This is the linear-tabling flavour of SLG resolution.
+ */
+final class Tables {
+    private final Program program;
+    private final Builtins builtins;
+    private final OccursCheck occursCheck; // of the query, for the evaluating machines
+    private final Map<String, Table> tables = new HashMap<>();
+    private final ArrayList<Table> evaluating = new ArrayList<>(); // calls being evaluated, innermost last
+    private final ArrayList<Table> completion = new ArrayList<>(); // incomplete tables, in creation order
+    private long answersAdded;
+    private long iterations;
+
+    Tables(Program program, Builtins builtins, OccursCheck occursCheck) {
+        this.program = program;
+        this.builtins = builtins;
+        this.occursCheck = occursCheck;
+    }
+
+    OccursCheck occursCheck() {
+        return occursCheck;
+    }
+
+    // Table for a resolved call, evaluated as far as possible from this call site.
+    // The result is complete unless the call depends on a variant still under evaluation.
+    Table call(Functor call) {
+        String key = variantKey(call);
+        Table t = tables.get(key);
+        if (t == null) {
+            t = new Table(call);
+            tables.put(key, t);
+            completion.add(t);
+            evaluate(t);
+        } else if (t.state == Table.INCOMPLETE) {
+            // Followers are re-run once per iteration of their leader; within it, they are just consumed.
+            if (t.round != evaluating.get(t.link).iteration) evaluate(t);
+        } else if (t.state == Table.EVALUATING) {
+            dependsOn(t.depth);
+        }
+        if (t.state != Table.COMPLETE) dependsOn(t.link);
+        return t;
+    }
+
+    private void evaluate(Table t) {
+        // A follower stays linked to its leader, which is still being evaluated further down the stack.
+        boolean follower = t.state == Table.INCOMPLETE;
+        t.state = Table.EVALUATING;
+        t.depth = evaluating.size();
+        evaluating.add(t);
+        while (true) {
+            if (!follower) t.link = t.depth;
+            t.iteration = ++iterations;
+            long before = answersAdded;
+            Machine sub = Machine.forTable(program, builtins, t.call, this);
+            while (sub.next()) {
+                add(t, (Functor) sub.resolveQueryGoal(0));
+            }
+            if (t.link < t.depth) break;         // follower: the leader will run us again
+            if (answersAdded == before) break;   // fixpoint for the whole component
+        }
+        evaluating.remove(evaluating.size() - 1);
+        if (t.link < t.depth) {
+            t.state = Table.INCOMPLETE;
+            t.round = evaluating.get(t.link).iteration;
+            // Tables that consumed from t now depend on t's leader: t's depth is no longer on the stack.
+            for (Table x : completion) {
+                if (x.state == Table.INCOMPLETE && x.link >= t.depth) {
+                    x.link = t.link;
+                    x.round = t.round;
+                }
+            }
+        } else {
+            // Leader: everything created since it belongs to its component and is now complete.
+            int from = completion.indexOf(t);
+            for (int i = completion.size() - 1; i >= from; i--) {
+                completion.remove(i).state = Table.COMPLETE;
+            }
+        }
+    }
+
+    private void dependsOn(int depth) {
+        if (evaluating.isEmpty()) return;
+        Table cur = evaluating.get(evaluating.size() - 1);
+        if (depth < cur.link) cur.link = depth;
+    }
+
+    private void add(Table t, Functor answer) {
+        if (t.keys.add(variantKey(answer))) {
+            t.add(Freshener.compile(new Clause(answer, List.of())));
+            answersAdded++;
+        }
+    }
+
+    // Source form of t with variables renamed _0, _1, ... in order of first occurrence.
+    static String variantKey(Term t) {
+        StringBuilder sb = new StringBuilder();
+        appendVariant(t, sb, new HashMap<>());
+        return sb.toString();
+    }
+
+    private static void appendVariant(Term t, StringBuilder sb, Map<Variable, Integer> seen) {
+        if (t instanceof Variable v) {
+            Integer n = seen.get(v);
+            if (n == null) {
+                n = seen.size();
+                seen.put(v, n);
+            }
+            sb.append('_').append(n);
+        } else if (t instanceof Functor f) {
+            sb.append(f.name()).append('(');
+            for (int i = 0; i < f.args().size(); i++) {
+                if (i > 0) sb.append(',');
+                appendVariant(f.args().get(i), sb, seen);
+            }
+            sb.append(')');
+        } else {
+            sb.append(t.toSource());
+        }
+    }
+
+    static final class Table {
+        static final int EVALUATING = 0, INCOMPLETE = 1, COMPLETE = 2;
+
+        final Functor call;
+        final Set<String> keys = new HashSet<>();
+        int state;
+        int depth; // position on the evaluation stack while evaluating
+        int link;  // shallowest evaluating call this one consumed from
+        long iteration; // current fixpoint iteration while evaluating
+        long round;     // leader iteration in which an incomplete table was last evaluated
+        private Clause[] answers = new Clause[8];
+        private int count;
+
+        Table(Functor call) {
+            this.call = call;
+        }
+
+        boolean isComplete() {
+            return state == COMPLETE;
+        }
+
+        int count() {
+            return count;
+        }
+
+        Clause answer(int i) {
+            return answers[i];
+        }
+
+        // Answers found so far, as compiled facts. Later answers are appended, never reordered.
+        List<Clause> answers() {
+            return Arrays.asList(answers).subList(0, count);
+        }
+
+        private void add(Clause answer) {
+            if (count == answers.length) answers = Arrays.copyOf(answers, count * 2);
+            answers[count++] = answer;
+        }
+    }
+}
@@ -2,6 +2,10 @@ package hu.kg.runfunctor.core;
 
 public interface Term {
     Term resolve(BindingEnvironment env);
+
+    // True if the term contains no variables; resolving or instantiating it then returns it as is.
+    boolean isGround();
+
     String toSource();
 }
 
@@ -6,14 +6,60 @@ import java.util.Objects;
 public final class Thing implements Term {
     private static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789 ";
     private static final SecureRandom RND = new SecureRandom();
+    private static final char[] DIGITS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+    private static final int PACKED_LENGTH = 11; // base-64 digits of a long
+    private static volatile ThingIdGenerator generator = ThingIdGenerator.SECURE_RANDOM;
 
-    private final String content;
+    private String content; // null until first needed for a packed id
+    private final long bits; // the packed id
+    private final boolean packed;
+    private final int id; // symbol id if interned, else -1
 
+    // Uninterned instance; use of() for the canonical one.
     public Thing(String content) {
+        this(content, -1);
+    }
+
+    Thing(String content, int id) {
         this.content = Objects.requireNonNull(content);
+        this.bits = 0;
+        this.packed = false;
+        this.id = id;
+    }
+
+    private Thing(long bits) {
+        this.bits = bits;
+        this.packed = true;
+        this.id = -1;
+    }
+
+    // Uninterned Thing of a 64-bit id, printed as its 11 base-64 digits.
+    static Thing ofBits(long bits) {
+        return new Thing(bits);
     }
 
-    public static Thing newRandom() {        
+    public static Thing of(String content) {
+        return Symbols.thing(content);
+    }
+
+    public int id() {
+        return id;
+    }
+
+    public static void setIdGenerator(ThingIdGenerator g) {
+        generator = Objects.requireNonNull(g);
+    }
+
+    public static ThingIdGenerator idGenerator() {
+        return generator;
+    }
+
+    // A fresh Thing from the current generator (what !NEW() returns).
+    public static Thing fresh() {
+        return generator.next();
+    }
+
+    public static Thing newRandom() {
         int len = 12;
         StringBuilder sb = new StringBuilder(len);
         for (int i = 0; i < len; i++) {
@@ -23,7 +69,15 @@ public final class Thing implements Term {
     }
 
     public String content() {
-        return content;
+        String c = content;
+        if (c == null) content = c = render(bits);
+        return c;
+    }
+
+    static String render(long bits) {
+        char[] buf = new char[PACKED_LENGTH];
+        for (int i = PACKED_LENGTH - 1; i >= 0; i--, bits >>>= 6) buf[i] = DIGITS[(int) (bits & 63)];
+        return new String(buf);
     }
 
     @Override
@@ -31,9 +85,14 @@ public final class Thing implements Term {
         return this;
     }
 
+    @Override
+    public boolean isGround() {
+        return true;
+    }
+
     @Override
     public String toSource() {
-        return "@" + content + "@";
+        return "@" + content() + "@";
     }
 
     @Override
@@ -43,12 +102,20 @@ public final class Thing implements Term {
 
     @Override
     public boolean equals(Object o) {
-        return (o instanceof Thing t) && t.content.equals(this.content);
+        if (o == this) return true;
+        if (!(o instanceof Thing t)) return false;
+        if (id >= 0 && t.id >= 0) return false; // two interned instances are equal only if identical
+        if (packed && t.packed) return bits == t.bits;
+        return t.content().equals(content());
     }
 
+    // For a packed id, the hash of its printed form, computed without printing it.
     @Override
     public int hashCode() {
-        return content.hashCode();
+        if (!packed || content != null) return content.hashCode();
+        int h = 0;
+        for (int shift = 6 * (PACKED_LENGTH - 1); shift >= 0; shift -= 6) h = 31 * h + DIGITS[(int) (bits >>> shift & 63)];
+        return h;
     }
 }
 
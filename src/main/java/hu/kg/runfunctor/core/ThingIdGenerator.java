@@ -0,0 +1,53 @@
+package hu.kg.runfunctor.core;
+
+import java.security.SecureRandom;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Makes the fresh Things of !NEW(); chosen with Thing.setIdGenerator.
+ * Besides the default (12 characters from one shared SecureRandom) there are two generators
+ * that do not contend between threads: a 64-bit sequence handed out to each thread in blocks,
+ * and a SplittableRandom per thread. Their ids can be kept as packed longs, made into text only
+ * when printed; a packed Thing equals the Thing parsed from its printed form.
+ */
+@FunctionalInterface
+public interface ThingIdGenerator {
+    Thing next();
+
+    ThingIdGenerator SECURE_RANDOM = Thing::newRandom;
+
+    // Ids start, start+1, ... in blocks of 1024 per thread (so not in creation order across threads).
+    static ThingIdGenerator sequence(long start, boolean packed) {
+        AtomicLong blocks = new AtomicLong(start);
+        ThreadLocal<long[]> block = ThreadLocal.withInitial(() -> new long[2]); // next, end
+        return () -> {
+            long[] b = block.get();
+            if (b[0] == b[1]) {
+                b[0] = blocks.getAndAdd(1024);
+                b[1] = b[0] + 1024;
+            }
+            long id = b[0]++;
+            return packed ? Thing.ofBits(id) : new Thing(Thing.render(id));
+        };
+    }
+
+    // A sequence from a random start, so ids of different runs do not meet.
+    static ThingIdGenerator sequence(boolean packed) {
+        return sequence(new SecureRandom().nextLong(), packed);
+    }
+
+    // Random 64-bit ids from a SplittableRandom split off per thread from one securely seeded root.
+    static ThingIdGenerator splittableRandom(boolean packed) {
+        SplittableRandom root = new SplittableRandom(new SecureRandom().nextLong());
+        ThreadLocal<SplittableRandom> local = ThreadLocal.withInitial(() -> {
+            synchronized (root) {
+                return root.split();
+            }
+        });
+        return () -> {
+            long id = local.get().nextLong();
+            return packed ? Thing.ofBits(id) : new Thing(Thing.render(id));
+        };
+    }
+}
@@ -4,24 +4,5 @@ enum TokType {
     NAME, STRING, THING,
     LPAREN, RPAREN, COMMA,
     CUT, // not used (placeholder)
-    COLON, MINUS, BANG, ARROW, DOT, EOF
+    COLON, MINUS, BANG, ARROW, DOT, SLASH, SEMI, NUMBER, EOF
 }
-
-final class Token {
-    final TokType type;
-    final String text;
-    final int pos;
-
-    Token(TokType type, String text, int pos) {
-        this.type = type;
-        this.text = text;
-        this.pos = pos;
-    }
-
-    @Override
-    public String toString() {
-        return type + (text != null ? "(" + text + ")" : "");
-    }
-}
-
-
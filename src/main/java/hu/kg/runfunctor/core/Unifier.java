@@ -6,14 +6,39 @@ public final class Unifier {
     private Unifier() {}
 
     public static boolean unify(Term a, Term b, BacktrackEnvironment env) {
-        a = deref(a, env);
-        b = deref(b, env);
+        return unify(a, 0, b, 0, env);
+    }
+
+    // Unifies a read through frame fa with b read through frame fb (0 for frame-free terms).
+    // Clause terms are never copied here; a subterm is instantiated only when it gets bound to a variable.
+    static boolean unify(Term a, int fa, Term b, int fb, BacktrackEnvironment env) {
+        while (a instanceof Variable v) {
+            Term t = env.cell(fa + v.slot());
+            if (t == null) break;
+            a = t;
+            fa = 0;
+        }
+        while (b instanceof Variable v) {
+            Term t = env.cell(fb + v.slot());
+            if (t == null) break;
+            b = t;
+            fb = 0;
+        }
 
         if (a instanceof Variable va) {
-            return unifyVar(va, b, env);
+            int sa = fa + va.slot();
+            if (b instanceof Variable vb) {
+                int sb = fb + vb.slot();
+                if (sa == sb) return true; // same variable
+                // Bind the younger variable to the older one.
+                if (sa > sb) env.bindSlot(sa, va, env.var(sb, vb), false);
+                else env.bindSlot(sb, vb, env.var(sa, va), false);
+                return true;
+            }
+            return bindVar(sa, va, b, fb, env);
         }
         if (b instanceof Variable vb) {
-            return unifyVar(vb, a, env);
+            return bindVar(fb + vb.slot(), vb, a, fa, env);
         }
         if (a instanceof Constant ca && b instanceof Constant cb) {
             return ca.equals(cb);
@@ -21,46 +46,89 @@ public final class Unifier {
         if (a instanceof Thing ta && b instanceof Thing tb) {
             return ta.equals(tb);
         }
-        if (a instanceof Functor fa && b instanceof Functor fb) {
-            if (!fa.name().equals(fb.name())) return false;
-            List<Term> aa = fa.args();
-            List<Term> bb = fb.args();
-            if (aa.size() != bb.size()) return false;
+        if (a instanceof Functor fna && b instanceof Functor fnb) {
+            if (fna.id() != fnb.id()) return false; // same name and arity
+            if (fna.isGround() && fnb.isGround()) return fna.equals(fnb); // a reference check when hash-consed
+            List<Term> aa = fna.args();
+            List<Term> bb = fnb.args();
             for (int i = 0; i < aa.size(); i++) {
-                if (!unify(aa.get(i), bb.get(i), env)) return false;
+                if (!unify(aa.get(i), fa, bb.get(i), fb, env)) return false;
             }
             return true;
         }
         return false;
     }
 
-    private static boolean unifyVar(Variable v, Term t, BacktrackEnvironment env) {
-        Term dv = deref(v, env);
-        if (dv instanceof Variable vv) v = vv; // dereferenced variable
+    // Matches a goal argument against an atom (a Constant or Thing), binding the argument if it is
+    // unbound. Shared by compiled clause heads and the rows of fact relations.
+    static boolean atom(Term t, int frame, Term atom, BacktrackEnvironment env) {
+        while (t instanceof Variable v) {
+            int s = frame + v.slot();
+            Term b = env.cell(s);
+            if (b == null) {
+                env.bindSlot(s, v, atom, false);
+                return true;
+            }
+            t = b;
+            frame = 0;
+        }
+        return t == atom || t.equals(atom);
+    }
 
-        Term dt = deref(t, env);
-        if (dt instanceof Variable vt) {
-            if (v.equals(vt)) return true; // same variable
-            env.bind(v, vt);
-            return true;
-        } else {
-            if (occurs(v, dt, env)) return false;
-            env.bind(v, dt);
-            return true;
+    // Binds the first occurrence of head variable v (still unbound, younger than anything in the goal).
+    static void first(Term t, int frame, int headFrame, Variable v, BacktrackEnvironment env) {
+        while (t instanceof Variable gv) {
+            int s = frame + gv.slot();
+            Term b = env.cell(s);
+            if (b == null) {
+                env.bindSlot(headFrame + v.slot(), v, env.var(s, gv), false);
+                return;
+            }
+            t = b;
+            frame = 0;
         }
+        env.bindSlot(headFrame + v.slot(), v, env.instantiate(t, frame), false);
+    }
+
+    private static boolean bindVar(int slot, Variable v, Term t, int frame, BacktrackEnvironment env) {
+        Term value = env.instantiate(t, frame);
+        if (mustCheck(slot, v, value, env.occursCheck()) && occurs(slot, value, env)) return false;
+        env.bindSlot(slot, v, value, false);
+        return true;
+    }
+
+    // A marked head variable is only trusted when read through its activation frame: a clause
+    // activated at frame 0 leaks its own variable objects into bindings.
+    private static boolean mustCheck(int slot, Variable v, Term value, OccursCheck mode) {
+        return switch (mode) {
+            case FULL -> true;
+            case NONE -> false;
+            case SAFE -> !value.isGround() && !(v.isFirstOccurrence() && slot != v.slot());
+        };
     }
 
-    private static Term deref(Term t, BindingEnvironment env) {
-        return t.resolve(env);
+    // Follows variable bindings only as far as the outermost non-variable term (no rebuilding).
+    static Term walk(Term t, BindingEnvironment env) {
+        return walk(t, 0, env);
     }
 
-    private static boolean occurs(Variable v, Term t, BacktrackEnvironment env) {
-        t = deref(t, env);
+    static Term walk(Term t, int frame, BindingEnvironment env) {
+        while (t instanceof Variable v) {
+            Term b = env.get(v, frame);
+            if (b == null) return v;
+            t = b;
+            frame = 0;
+        }
+        return t;
+    }
+
+    private static boolean occurs(int slot, Term t, BacktrackEnvironment env) {
+        t = walk(t, env);
         if (t instanceof Variable vv) {
-            return v.equals(vv);
-        } else if (t instanceof Functor f) {
+            return vv.slot() == slot;
+        } else if (t instanceof Functor f && !f.isGround()) {
             for (Term a : f.args()) {
-                if (occurs(v, a, env)) return true;
+                if (occurs(slot, a, env)) return true;
             }
             return false;
         } else {
@@ -68,5 +136,3 @@ public final class Unifier {
         }
     }
 }
-
-
@@ -13,13 +13,20 @@ final class Util {
     private Util() {}
 
     public static List<String> splitAndremoveComments(String whole) throws IOException {
-        
-    
-    	List<String> lines=splitByNewLine(whole);
-        
+        CommentStripper stripper = new CommentStripper();
         List<String> linesWithOutComments = new ArrayList<>();
-        boolean isMultilineComment = false;
-        for ( String line :lines) {
+        for (String line : splitByNewLine(whole)) {
+            stripper.strip(line, linesWithOutComments);
+        }
+        return linesWithOutComments;
+    }
+
+    // Removes "//" and "/* */" comments line by line, carrying an open multi-line comment over
+    // to the following lines; what is left of a line is added to out unless it is blank.
+    static final class CommentStripper {
+        private boolean isMultilineComment;
+
+        void strip(String line, List<String> out) {
             int commentIndex = line.indexOf("//");  // Find the index of "//" in each line
             
             if (!isMultilineComment && commentIndex != -1) {  // If there is a "//", remove the part after it from the line
@@ -32,7 +39,7 @@ final class Util {
                     
                     if (multilineCommentEndIndex != -1) { // If there is a "*/", remove the part before it from the line
                         line = line.substring(multilineCommentEndIndex + 2);
-                        linesWithOutComments.add(trimmedLineBeforeComment);
+                        out.add(trimmedLineBeforeComment);
                     } else {  // The multi-line comment continues on the next line
                         isMultilineComment = true;
                     }
@@ -43,19 +50,17 @@ final class Util {
                         line = line.substring(multilineCommentEndIndex + 2);
                         isMultilineComment = false;
                     } else {  // The multi-line comment continues on the next line
-                        continue;
+                        return;
                     }
                 }
             }
             
             if (!line.trim().isEmpty()) {  // Only add non-empty lines to our list (ignoring pure whitespace lines)
-                linesWithOutComments.add(line.trim()); 
+                out.add(line.trim()); 
             }
         }
-        
-        
-        return linesWithOutComments;
     }
+
     static String escapeString(String s) {
         StringBuilder sb = new StringBuilder(s.length() + 8);
         for (int i = 0; i < s.length(); i++) {
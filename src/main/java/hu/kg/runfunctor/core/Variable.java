@@ -5,10 +5,33 @@ import java.util.Objects;
 public final class Variable implements Term {
     private final String name; // may include leading '*'
     private final boolean overrideable;
+    private final int slot;     // index into the binding store, -1 until compiled
+    private final boolean fresh; // renamed copy of a clause variable
+    private final boolean first; // first occurrence of a clause variable in its head
 
     public Variable(String name) {
+        this(name, -1, false);
+    }
+
+    Variable(String name, int slot, boolean fresh) {
+        this(name, slot, fresh, false);
+    }
+
+    private Variable(String name, int slot, boolean fresh, boolean first) {
         this.name = Objects.requireNonNull(name);
         this.overrideable = name.startsWith("*");
+        this.slot = slot;
+        this.fresh = fresh;
+        this.first = first;
+    }
+
+    // The same clause variable, marking its first occurrence in a head (equal to this one).
+    Variable firstOccurrence() {
+        return new Variable(name, slot, fresh, true);
+    }
+
+    boolean isFirstOccurrence() {
+        return first;
     }
 
     public String name() {
@@ -19,15 +42,25 @@ public final class Variable implements Term {
         return overrideable;
     }
 
+    int slot() {
+        return slot;
+    }
+
     @Override
     public Term resolve(BindingEnvironment env) {
         Term b = env.get(this);
         return b == null ? this : b.resolve(env);
     }
 
+    @Override
+    public boolean isGround() {
+        return false;
+    }
+
     @Override
     public String toSource() {
-        return name;
+        // Fresh variables are only told apart by their slot; render them the way renamed variables always looked.
+        return fresh ? name + "__" + slot : name;
     }
 
     @Override
@@ -37,13 +70,12 @@ public final class Variable implements Term {
 
     @Override
     public boolean equals(Object o) {
-        return (o instanceof Variable v) && v.name.equals(this.name);
+        if (!(o instanceof Variable v)) return false;
+        return slot >= 0 ? v.slot == slot : v.slot < 0 && v.name.equals(this.name);
     }
 
     @Override
     public int hashCode() {
-        return name.hashCode();
+        return slot >= 0 ? slot : name.hashCode();
     }
 }
-
-
@@ -0,0 +1,123 @@
+package hu.kg.runfunctor.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class AndParallelTest {
+
+    private static Program program(String... lines) {
+        Program p = new Program();
+        for (String line : lines) p.consult(line);
+        return p;
+    }
+
+    private static List<String> solutions(Program p, Builtins builtins, boolean andParallel, String query) {
+        Solver s = new Solver(p, builtins);
+        s.setAndParallel(andParallel);
+        List<String> out = new ArrayList<>();
+        s.solve(QueryParser.parse(query), sol -> out.add(new TreeMap<>(sol).toString()));
+        return out;
+    }
+
+    private static void assertSameAsSequential(Program p, String query) {
+        Builtins builtins = new Builtins();
+        assertEquals(query, solutions(p, builtins, false, query), solutions(p, builtins, true, query));
+    }
+
+    @Test
+    public void independentGoalsGiveTheSequentialSolutionsInOrder() {
+        Program p = program(
+            "color(\"red\").", "color(\"green\").", "color(\"blue\").",
+            "size(\"s\").", "size(\"m\").",
+            "shape(\"round\").", "shape(\"flat\").",
+            "item(C, S, F) :- color(C), size(S), shape(F).",
+            "pair(X, Y) :- item(X, S, F), item(Y, T, G).");
+        assertSameAsSequential(p, "item(C, S, F).");
+        assertSameAsSequential(p, "color(C), size(S).");
+        assertSameAsSequential(p, "item(\"red\", S, F).");
+        assertEquals(12 * 12, solutions(p, new Builtins(), true, "pair(X, Y).").size());
+        assertSameAsSequential(p, "pair(X, Y).");
+    }
+
+    @Test
+    public void sharedVariablesStayNested() {
+        Program p = program(
+            "edge(\"a\", \"b\").", "edge(\"b\", \"c\").", "edge(\"a\", \"c\").",
+            "two(X, Z) :- edge(X, Y), edge(Y, Z).",
+            "both(X, Y) :- edge(X, Y), edge(Y, Z), edge(X, W).");
+        assertSameAsSequential(p, "two(X, Z).");
+        assertSameAsSequential(p, "both(X, Y).");
+    }
+
+    @Test
+    public void failingSegmentsGiveNoSolutions() {
+        Program p = program(
+            "a(\"1\").", "a(\"2\").",
+            "front(X, Y) :- none(X), a(Y).",
+            "back(X, Y) :- a(X), none(Y).",
+            "middle(X, Y, Z) :- a(X), none(Y), a(Z).");
+        assertSameAsSequential(p, "front(X, Y).");
+        assertSameAsSequential(p, "back(X, Y).");
+        assertSameAsSequential(p, "middle(X, Y, Z).");
+        assertEquals(0, solutions(p, new Builtins(), true, "middle(X, Y, Z).").size());
+    }
+
+    // spin/1 has no solutions and takes 10^8 steps (its goals share variables, so they stay nested).
+    private static final String[] SPIN = {
+        "d(\"0\").", "d(\"1\").", "d(\"2\").", "d(\"3\").", "d(\"4\").",
+        "d(\"5\").", "d(\"6\").", "d(\"7\").", "d(\"8\").", "d(\"9\").",
+        "tick(A, B, C, D, E, F, G, H, T) :- !TICK()->T.",
+        "spin(Z) :- d(A), d(B), d(C), d(D), d(E), d(F), d(G), d(H), tick(A, B, C, D, E, F, G, H, T), none(T).",
+    };
+
+    private static void assertStopped(AtomicLong ticks) throws InterruptedException {
+        Thread.sleep(100);
+        long before = ticks.get();
+        Thread.sleep(200);
+        assertEquals(before, ticks.get());
+    }
+
+    @Test
+    public void segmentsAreCancelledWhenTheFirstSegmentFails() throws InterruptedException {
+        AtomicLong ticks = new AtomicLong();
+        Builtins builtins = new Builtins();
+        builtins.register("TICK", (args, env) -> Constant.of(Long.toString(ticks.incrementAndGet())));
+        Program p = program(SPIN);
+        p.consult("wasted(X) :- none(X), spin(Z).");
+        p.link(builtins);
+        assertEquals(List.of(), solutions(p, builtins, true, "wasted(X)."));
+        assertStopped(ticks);
+    }
+
+    @Test
+    public void segmentsAreCancelledWhenAnotherSegmentHasNoAnswers() throws InterruptedException {
+        AtomicLong ticks = new AtomicLong();
+        Builtins builtins = new Builtins();
+        builtins.register("TICK", (args, env) -> Constant.of(Long.toString(ticks.incrementAndGet())));
+        Program p = program(SPIN);
+        p.consult("d2(X) :- d(X).");
+        p.consult("wasted(X, Y) :- d2(X), none(Y), spin(Z).");
+        p.link(builtins);
+        assertEquals(List.of(), solutions(p, builtins, true, "wasted(X, Y)."));
+        assertStopped(ticks);
+    }
+
+    @Test
+    public void closingTheSolutionsStopsTheSearch() {
+        Program p = program("a(\"1\").", "a(\"2\").", "a(\"3\").", "p(X, Y) :- a(X), a(Y).");
+        Solver s = new Solver(p, new Builtins());
+        s.setAndParallel(true);
+        try (Solutions it = s.solutions(QueryParser.parse("p(X, Y)."))) {
+            Map<String, Term> first = it.next();
+            it.close();
+            assertEquals("\"1\"", first.get("X").toSource());
+            assertEquals("\"1\"", first.get("Y").toSource());
+            assertFalse(it.hasNext());
+        }
+    }
+}
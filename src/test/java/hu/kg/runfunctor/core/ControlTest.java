@@ -0,0 +1,84 @@
+package hu.kg.runfunctor.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.*;
+
+import org.junit.Test;
+
+public class ControlTest {
+
+    private static final String[] FACTS = {
+        "m(\"1\").", "m(\"2\").", "m(\"3\").",
+        "n(\"a\").", "n(\"b\").",
+    };
+
+    private static List<String> values(String query, String var, String... rules) {
+        Program p = new Program();
+        for (String line : FACTS) p.consult(line);
+        for (String line : rules) p.consult(line);
+        List<String> out = new ArrayList<>();
+        new Solver(p, new Builtins()).solve(QueryParser.parse(query), s -> out.add(s.get(var).toSource()));
+        return out;
+    }
+
+    @Test
+    public void cutCommitsToTheFirstSolutionOfWhatPrecedesIt() {
+        assertEquals(List.of("\"1\""), values("c(X).", "X", "c(X) :- m(X), !."));
+        assertEquals(List.of("\"1a\"", "\"1b\""),
+            values("c(X, Y), !CONCAT(X, Y)->*xy.", "*xy", "c(X, Y) :- m(X), !, n(Y)."));
+    }
+
+    @Test
+    public void cutDropsTheLaterClausesOfItsPredicateOnly() {
+        String[] rules = {"c(\"1\") :- !.", "c(\"2\").", "d(X) :- c(X).", "d(\"9\").", "same(X, X)."};
+        assertEquals(List.of("\"1\""), values("c(X).", "X", rules));
+        assertEquals(List.of("\"2\""), values("c(\"2\"), same(X, \"2\").", "X", rules));
+        assertEquals(List.of("\"1\"", "\"9\""), values("d(X).", "X", rules));
+    }
+
+    @Test
+    public void cutInsideADisjunctionCutsTheClause() {
+        assertEquals(List.of("\"1\""), values("c(X).", "X", "c(X) :- ( m(X), ! ; n(X) ).", "c(\"z\")."));
+    }
+
+    @Test
+    public void onceTakesTheFirstSolution() {
+        assertEquals(List.of("\"1\""), values("once(m(X)).", "X"));
+        assertEquals(List.of("\"1\"", "\"1\"", "\"1\""), values("m(X), once(m(Y)).", "Y"));
+        assertEquals(List.of(), values("once(none(X)).", "X"));
+    }
+
+    // A cut inside once/1 or a condition is local to it.
+    @Test
+    public void cutInsideOnceOrAConditionIsLocal() {
+        assertEquals(List.of("\"1\"", "\"z\""), values("c(X).", "X", "c(X) :- once(m(X), !).", "c(\"z\")."));
+        assertEquals(List.of("\"a\"", "\"b\"", "\"z\""),
+            values("c(X).", "X", "c(X) :- ( m(Y), ! -> n(X) ; m(X) ).", "c(\"z\")."));
+    }
+
+    @Test
+    public void ifThenElseCommitsToTheFirstSolutionOfTheCondition() {
+        assertEquals(List.of("\"1a\"", "\"1b\""),
+            values("( m(X) -> n(Y) ; m(Y) ), !CONCAT(X, Y)->*xy.", "*xy"));
+        assertEquals(List.of("\"1\"", "\"2\"", "\"3\""), values("( none(X) -> n(Y) ; m(Y) ).", "Y"));
+        assertEquals(List.of(), values("( none(X) -> n(Y) ).", "Y"));
+    }
+
+    @Test
+    public void elseBranchesChain() {
+        String[] rules = {
+            "kind(X, K) :- ( n(X) -> same(K, \"n\") ; m(X) -> same(K, \"m\") ; same(K, \"other\") ).",
+            "same(X, X).",
+        };
+        assertEquals(List.of("\"n\""), values("kind(\"a\", K).", "K", rules));
+        assertEquals(List.of("\"m\""), values("kind(\"2\", K).", "K", rules));
+        assertEquals(List.of("\"other\""), values("kind(\"q\", K).", "K", rules));
+    }
+
+    @Test
+    public void disjunctionTriesLeftThenRight() {
+        assertEquals(List.of("\"1\"", "\"2\"", "\"3\"", "\"a\"", "\"b\""), values("( m(X) ; n(X) ).", "X"));
+        assertEquals(List.of("\"a\"", "\"b\"", "\"1\"", "\"2\"", "\"3\""), values("c(X).", "X", "c(X) :- ( n(X) ; m(X) )."));
+    }
+}
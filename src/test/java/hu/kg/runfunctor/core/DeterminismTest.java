@@ -0,0 +1,68 @@
+package hu.kg.runfunctor.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.*;
+
+import org.junit.Test;
+
+// The trail height seen by a TRAIL builtin tells whether a choicepoint is left: the query's own
+// frame is the one entry before the first call, and a later binding of a query variable is
+// trailed only if some choicepoint may still backtrack over it.
+public class DeterminismTest {
+
+    private static final int N = 100_000;
+
+    private static Builtins builtins() {
+        Builtins b = new Builtins();
+        b.register("TRAIL", (args, env) -> Constant.of(Integer.toString(((BacktrackEnvironment) env).mark())));
+        return b;
+    }
+
+    private static String first(Program p, String query, String var) {
+        return new Solver(p, builtins()).solveFirst(QueryParser.parse(query)).get().get(var).toSource();
+    }
+
+    // walk/3 follows next/3 to the end of an N-long chain, binds the query's E there and
+    // reports the trail. Every call has exactly one viable clause: next/3 by its indexed first
+    // argument, go/4 by a first argument that clashes with the other clause's head.
+    private static Program chain(String... extra) {
+        Program p = new Program();
+        for (int i = 0; i < N; i++) {
+            p.consult("next(\"n" + i + "\", \"n" + (i + 1) + "\", \"" + (i + 1 < N ? "more" : "last") + "\").");
+        }
+        p.consult("walk(X, E, T) :- next(X, Y, F), go(F, Y, E, T).");
+        p.consult("go(\"more\", Y, E, T) :- walk(Y, E, T).");
+        p.consult("go(\"last\", Y, E, T) :- same(Y, E), !TRAIL()->T.");
+        p.consult("same(X, X).");
+        for (String line : extra) p.consult(line);
+        return p;
+    }
+
+    @Test
+    public void deterministicRecursionLeavesNoChoicepoint() {
+        Program p = chain();
+        assertEquals("\"n" + N + "\"", first(p, "walk(\"n0\", E, T).", "E"));
+        assertEquals("\"1\"", first(p, "walk(\"n0\", E, T).", "T"));
+    }
+
+    // A go/4 clause that always matches keeps a choicepoint open at every step.
+    @Test
+    public void aViableLaterClauseKeepsAChoicepoint() {
+        Program p = chain("go(F, Y, E, T) :- none(F).");
+        assertEquals("\"2\"", first(p, "walk(\"n0\", E, T).", "T"));
+    }
+
+    @Test
+    public void clausesWithClashingHeadsAreSkipped() {
+        Program p = new Program();
+        p.consult("kind(\"a\", \"vowel\").");
+        p.consult("kind(\"b\", \"consonant\").");
+        p.consult("kind(\"c\", \"consonant\").");
+        p.consult("check(X, K, T) :- kind(X, K), !TRAIL()->T.");
+        assertEquals("\"1\"", first(p, "check(\"a\", K, T).", "T"));
+        assertEquals("\"1\"", first(p, "check(\"c\", K, T).", "T"));
+        assertEquals("\"consonant\"", first(p, "check(\"c\", K, T).", "K"));
+        assertEquals("\"3\"", first(p, "check(X, K, T).", "T")); // X and K bound under a choicepoint
+    }
+}
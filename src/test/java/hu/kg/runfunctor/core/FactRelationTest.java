@@ -0,0 +1,144 @@
+package hu.kg.runfunctor.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import org.junit.Test;
+
+public class FactRelationTest {
+
+    private static List<String> solutions(Program p, String query) {
+        List<String> out = new ArrayList<>();
+        new Solver(p, new Builtins()).solve(QueryParser.parse(query), s -> out.add(new TreeMap<>(s).toString()));
+        return out;
+    }
+
+    // The rows of r/arity after loading text, as "a|b|c" strings in row order.
+    private static List<String> rows(String text, int arity, char separator, boolean header) throws IOException {
+        Program p = new Program();
+        FactRelation r = p.relation("r", arity);
+        int added = r.load(new StringReader(text), separator, header);
+        assertEquals(r.size(), added);
+        List<String> out = new ArrayList<>();
+        for (int row = 0; row < r.size(); row++) {
+            StringJoiner sj = new StringJoiner("|");
+            for (int c = 0; c < arity; c++) sj.add(((Constant) r.value(r.column(c)[row])).value());
+            out.add(sj.toString());
+        }
+        return out;
+    }
+
+    private static void assertRejected(String text, int arity, String message) throws IOException {
+        try {
+            rows(text, arity, ',', false);
+            fail("accepted: " + text);
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    @Test
+    public void quotedFieldsHoldSeparatorsNewlinesAndQuotes() throws IOException {
+        assertEquals(List.of("a,b|say \"hi\"|two\nlines", "|x|\"\""),
+            rows("\"a,b\",\"say \"\"hi\"\"\",\"two\nlines\"\n\"\",x,\"\"\"\"\"\"\n", 3, ',', false));
+        assertEquals(List.of("1|a \"b\" c"), rows("1,\"a \"\"b\"\" c\"", 2, ',', false));
+    }
+
+    @Test
+    public void headerIsSkipped() throws IOException {
+        assertEquals(List.of("ann|3", "bob|4"), rows("name,age\nann,3\nbob,4\n", 2, ',', true));
+        assertEquals(List.of("ann|3"), rows("\n\nname,age\nann,3\n", 2, ',', true));
+        assertEquals(List.of("name|age", "ann|3"), rows("name,age\nann,3\n", 2, ',', false));
+        assertEquals(List.of(), rows("\"a\nheader\",age\n", 2, ',', true));
+    }
+
+    @Test
+    public void blankAndTrailingLinesAreSkipped() throws IOException {
+        assertEquals(List.of("a|b", "c|d"), rows("a,b\n\n\nc,d\n\n", 2, ',', false));
+        assertEquals(List.of("a|b", "c|d"), rows("a,b\nc,d", 2, ',', false));
+        assertEquals(List.of("a|b", "c|d"), rows("a,b\r\nc,d\r\n", 2, ',', false));
+        assertEquals(List.of("a|", "|"), rows("a,\n,\n", 2, ',', false));
+        assertEquals(List.of(), rows("\n\n", 2, ',', false));
+    }
+
+    @Test
+    public void wrongFieldCountsAreReportedWithTheirLine() throws IOException {
+        assertRejected("a,b\nc\n", 2, "line 2: 1 fields, expected 2");
+        assertRejected("a,b,c\n", 2, "line 1: more than 2 fields");
+        assertRejected("a,b\n\n\"x\ny\",z,w\n", 2, "line 4: more than 2 fields");
+        assertRejected("a,b\nc", 2, "line 2: 1 fields, expected 2");
+        assertRejected("a,b\n\"c,d\n", 2, "line 3: unterminated quoted field");
+    }
+
+    @Test
+    public void tabSeparatedFilesAreReadByExtension() throws IOException {
+        assertEquals(List.of("a|b,c", "d \"q\"|e"), rows("a\tb,c\nd \"q\"\te\n", 2, '\t', false));
+        Path dir = Files.createTempDirectory("rel");
+        Path tsv = dir.resolve("pairs.tsv");
+        try {
+            Files.writeString(tsv, "k\tv\none\t1,5\n");
+            Program p = new Program();
+            assertEquals(1, p.relation("pair", 2).load(tsv, true));
+            assertEquals(List.of("{V=\"1,5\"}"), solutions(p, "pair(\"one\", V)."));
+        } finally {
+            Files.delete(tsv);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void addTakesConstantsAndThings() {
+        Program p = new Program();
+        FactRelation r = p.relation("owns", 2);
+        r.add(Thing.of("p1"), Constant.of("car"));
+        r.add(Thing.of("p2"), Constant.of("car"));
+        r.add(Thing.of("p1"), Constant.of("bike"));
+        assertEquals(3, r.size());
+        assertEquals(4, r.distinctValues());
+        assertEquals(List.of("{W=\"car\"}", "{W=\"bike\"}"), solutions(p, "owns(@p1@, W)."));
+        assertEquals(List.of("{P=@p1@}", "{P=@p2@}"), solutions(p, "owns(P, \"car\")."));
+        try {
+            r.add(Constant.of("only one"));
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            r.add(Thing.of("p3"), new Functor("f", List.of(Constant.of("x"))));
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(3, r.size());
+    }
+
+    // Answers from the columns, with and without indexes, are those of the same facts as clauses.
+    @Test
+    public void selectAnswersAsTheEquivalentClauses() throws IOException {
+        Random rnd = new Random(5);
+        StringBuilder csv = new StringBuilder();
+        Program clauses = new Program();
+        for (int i = 0; i < 300; i++) {
+            String a = "a" + rnd.nextInt(10), b = "b" + rnd.nextInt(4), c = rnd.nextBoolean() ? a : "c" + rnd.nextInt(30);
+            csv.append(a).append(',').append(b).append(',').append(c).append('\n');
+            clauses.consult("t(\"" + a + "\", \"" + b + "\", \"" + c + "\").");
+        }
+        Program columns = new Program();
+        columns.relation("t", 3).load(new StringReader(csv.toString()), ',', false);
+        String[] queries = {
+            "t(X, Y, Z).", "t(\"a3\", Y, Z).", "t(X, \"b1\", Z).", "t(X, Y, \"c7\").", "t(\"a3\", \"b1\", Z).",
+            "t(X, \"b2\", \"a4\").", "t(\"a3\", \"b0\", \"a3\").", "t(X, Y, X).", "t(X, \"b3\", X).",
+            "t(\"nope\", Y, Z).", "t(X, Y, f(Z)).", "t(X, Y, Z), t(Z, Y, W).", "t(X, \"b0\", Z), t(X, \"b1\", Z).",
+        };
+        for (String q : queries) {
+            List<String> expected = solutions(clauses, q);
+            assertEquals(q, expected, solutions(columns, q));
+        }
+        assertTrue(solutions(columns, "t(X, Y, X).").size() > 0);
+    }
+}
@@ -0,0 +1,28 @@
+package hu.kg.runfunctor.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FreshenerTest {
+
+    private static final String CLAUSE = "p(X, f(Y, \"a\")) :- q(X), !CONCAT(X, Y)->*z, r(*z).";
+
+    // freshen(Clause) renames apart on its own, for parsed and compiled clauses alike.
+    @Test
+    public void freshenWithoutAnEnvironmentRenamesEveryVariable() {
+        Clause parsed = ClauseParser.parse(CLAUSE);
+        for (Clause c : new Clause[] {parsed, Freshener.compile(parsed)}) {
+            Clause a = Freshener.freshen(c);
+            Clause b = Freshener.freshen(c);
+            String suffix = a.head().args().get(0).toSource().substring(1);
+            assertTrue(suffix, suffix.matches("__[0-9]+"));
+            assertEquals(parsed.toSource().replace("X", "X" + suffix).replace("Y", "Y" + suffix)
+                .replace("*z", "*z" + suffix), a.toSource());
+            assertFalse(a.head().args().get(0).equals(b.head().args().get(0)));
+            assertEquals(a.head().args().get(0), ((Functor) a.body().get(0)).args().get(0));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package hu.kg.runfunctor.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.*;
+
+import org.junit.Test;
+
+public class HeadCompilerTest {
+
+    private static final String[] SOURCE = {
+        "color(\"red\", \"warm\").", "color(\"blue\", \"cold\").", "color(\"gold\", \"warm\").",
+        "same(X, X).",
+        "twice(X, f(X), Y, Y).",
+        "shape(box(point(X, \"0\"), size(W, H)), X, W, H).",
+        "shape(circle(point(X, Y), R), X, Y, R).",
+        "pair(X, Y) :- color(X, T), color(Y, T).",
+        "nest(f(g(X, \"a\"), X), X).",
+    };
+
+    private static final String[] QUERIES = {
+        "color(C, T).", "color(\"gold\", T).", "color(C, \"cold\").", "color(\"red\", \"cold\").",
+        "same(X, Y).", "same(X, \"a\").", "same(f(X), f(\"a\")).", "same(\"a\", \"b\").", "same(X, Y), same(Y, \"a\").",
+        "twice(A, B, C, D).", "twice(\"1\", f(\"1\"), Y, \"2\").", "twice(\"1\", f(\"2\"), Y, Z).",
+        "twice(f(Z), f(f(Z)), Y, Y).", "twice(A, f(A), \"x\", \"y\").",
+        "shape(S, X, W, H).", "shape(box(P, S), X, W, H).", "shape(box(point(\"1\", Z), size(\"2\", \"3\")), X, W, H).",
+        "shape(circle(C, \"5\"), X, Y, R).", "shape(box(point(\"1\", \"1\"), Z), X, W, H).",
+        "pair(X, Y).", "pair(\"red\", Y).",
+        "nest(A, B).", "nest(f(g(\"1\", Q), R), S).", "nest(f(g(\"1\", Q), \"2\"), S).",
+        "big(K, V).", "big(\"k7\", V).", "big(K, \"v599\").", "big(\"k3\", \"k3\").", "big(\"same\", V).",
+    };
+
+    private static Program program() {
+        Program p = new Program();
+        for (String line : SOURCE) p.consult(line);
+        for (int i = 0; i < HeadCompiler.MAX_CLAUSES + 100; i++) p.consult("big(\"k" + i + "\", \"v" + i + "\").");
+        p.consult("big(X, X).");
+        return p;
+    }
+
+    private static List<String> solutions(Program p, String query) {
+        List<String> out = new ArrayList<>();
+        new Solver(p, new Builtins()).solve(QueryParser.parse(query), s -> out.add(new TreeMap<>(s).toString()));
+        return out;
+    }
+
+    @Test
+    public void compileGivesEverySmallPredicateAMatcher() {
+        Program p = program();
+        assertTrue(p.compile());
+        for (Predicate pred : p.predicates()) {
+            for (Clause c : pred.clauses()) {
+                if (pred.name().equals("big")) {
+                    assertNull(c.matcher());
+                } else {
+                    assertNotNull(pred.name(), c.matcher());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void compiledHeadsGiveTheInterpretedAnswers() {
+        Program interpreted = program();
+        Program compiled = program();
+        assertTrue(compiled.compile());
+        for (String q : QUERIES) {
+            List<String> expected = solutions(interpreted, q);
+            assertEquals(q, expected, solutions(compiled, q));
+        }
+        assertEquals(List.of("{H=\"3\", W=\"2\", X=\"1\", Z=\"0\"}"),
+            solutions(compiled, "shape(box(point(\"1\", Z), size(\"2\", \"3\")), X, W, H)."));
+        assertEquals(List.of("{V=\"v7\"}", "{V=\"k7\"}"), solutions(compiled, "big(\"k7\", V)."));
+    }
+
+    // The engine's classes are found where they were loaded from, whatever the process classpath says.
+    @Test
+    public void compileDoesNotDependOnTheProcessClasspath() {
+        String classpath = System.getProperty("java.class.path");
+        System.setProperty("java.class.path", "");
+        try {
+            Program p = program();
+            assertTrue(p.compile());
+            assertEquals(solutions(program(), "twice(A, B, C, D)."), solutions(p, "twice(A, B, C, D)."));
+        } finally {
+            System.setProperty("java.class.path", classpath);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package hu.kg.runfunctor.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.*;
+
+import org.junit.Test;
+
+public class IndexingTest {
+
+    private static List<String> values(Program p, Builtins builtins, String query, String var) {
+        List<String> out = new ArrayList<>();
+        new Solver(p, builtins).solve(QueryParser.parse(query), s -> out.add(s.get(var).toSource()));
+        return out;
+    }
+
+    // ADD consults one more m/1 fact the first time it runs, while m(X) still has a choicepoint.
+    private static List<String> addWhileSolving(int facts, String query) {
+        Program p = new Program();
+        for (int i = 0; i < facts; i++) p.consult("m(\"" + i + "\", \"k\").");
+        Builtins builtins = new Builtins();
+        boolean[] added = {false};
+        builtins.register("ADD", (args, env) -> {
+            if (!added[0]) {
+                added[0] = true;
+                p.consult("m(\"new\", \"k\").");
+            }
+            return Constant.of("ok");
+        });
+        List<String> during = values(p, builtins, query, "X");
+        assertEquals(facts + 1, values(p, builtins, query, "X").size());
+        return during;
+    }
+
+    // A choicepoint walks the clauses there were when it was created.
+    @Test
+    public void clausesAddedWhileSolvingAreNotSeenByOpenChoicepoints() {
+        for (int facts : new int[] {3, 20}) {
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < facts; i++) expected.add("\"" + i + "\"");
+            assertEquals(expected, addWhileSolving(facts, "m(X, \"k\"), !ADD()->*y."));
+        }
+    }
+
+    // e/3 has 4 clauses per first argument, one per second argument and 2 per third.
+    private static Program table() {
+        Program p = new Program();
+        int n = 2 * Predicate.MIN_INDEXED;
+        for (int i = 0; i < n; i++) p.consult("e(\"a" + i / 4 + "\", \"b" + i + "\", \"c" + i % (n / 2) + "\").");
+        return p;
+    }
+
+    // selections: per position, the calls that chose its index, or -1 for no index yet.
+    private static void assertStats(IndexStats stats, int built, long scans, long... selections) {
+        assertEquals(stats.toString(), built, stats.indexesBuilt());
+        assertEquals(stats.toString(), scans, stats.scans());
+        for (int i = 0; i < selections.length; i++) {
+            assertEquals(stats.toString(), selections[i] >= 0, stats.isIndexed(i));
+            assertEquals(stats.toString(), Math.max(selections[i], 0), stats.selections(i));
+        }
+    }
+
+    @Test
+    public void callsBuildAndChooseTheIndexesOfTheirBoundArguments() {
+        Program p = table();
+        Builtins builtins = new Builtins();
+        assertStats(p.indexStats("e", 3), 0, 0, -1, -1, -1);
+        assertEquals(4, values(p, builtins, "e(\"a1\", Y, Z).", "Y").size());
+        assertStats(p.indexStats("e", 3), 1, 0, 1, -1, -1);
+        assertEquals(List.of("\"a0\""), values(p, builtins, "e(X, \"b3\", Z).", "X"));
+        assertStats(p.indexStats("e", 3), 2, 0, 1, 1, -1);
+        // Both bound: the second argument's bucket (1 clause) beats the first's (4).
+        assertEquals(List.of("\"c3\""), values(p, builtins, "e(\"a0\", \"b3\", Z).", "Z"));
+        assertStats(p.indexStats("e", 3), 2, 0, 1, 2, -1);
+        assertEquals(List.of("\"b2\"", "\"b10\""), values(p, builtins, "e(X, Y, \"c2\").", "Y"));
+        assertStats(p.indexStats("e", 3), 3, 0, 1, 2, 1);
+        // The third argument's bucket (2) beats the first's (4); no new index is built.
+        assertEquals(List.of("\"b2\""), values(p, builtins, "e(\"a0\", Y, \"c2\").", "Y"));
+        assertStats(p.indexStats("e", 3), 3, 0, 1, 2, 2);
+        assertEquals(16, values(p, builtins, "e(X, Y, Z).", "Y").size());
+        assertStats(p.indexStats("e", 3), 3, 1, 1, 2, 2);
+        assertEquals(List.of(), values(p, builtins, "e(\"zz\", Y, Z).", "Y"));
+        assertStats(p.indexStats("e", 3), 3, 1, 2, 2, 2);
+    }
+
+    @Test
+    public void smallPredicatesAreScanned() {
+        Program p = new Program();
+        for (int i = 0; i < Predicate.MIN_INDEXED - 1; i++) p.consult("s(\"" + i + "\", \"x\").");
+        assertEquals(List.of("\"x\""), values(p, new Builtins(), "s(\"3\", Y).", "Y"));
+        assertStats(p.indexStats("s", 2), 0, 1, -1, -1);
+    }
+}
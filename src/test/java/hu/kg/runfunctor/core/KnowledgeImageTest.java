@@ -0,0 +1,85 @@
+package hu.kg.runfunctor.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import org.junit.Test;
+
+public class KnowledgeImageTest {
+
+    private static final String[] SOURCE = {
+        "parent(\"ann\", \"bob\").",
+        "parent(\"bob\", \"cid\").",
+        "ancestor(X, Y) :- parent(X, Y).",
+        "ancestor(X, Y) :- parent(X, Z), ancestor(Z, Y).",
+        "p(X) :- q(X).",
+        "r(X) :- !NOPE(X)->*y.",
+        "s(X) :- ( parent(X, Z) -> once(q(X)) ; parent(Z, X) ).",
+    };
+
+    private static Program source(String... lines) {
+        Program p = new Program();
+        for (String line : lines) p.consult(line);
+        return p;
+    }
+
+    // program written to an image and loaded back.
+    private static Program roundTrip(Program program) throws IOException {
+        Path file = Files.createTempFile("kb", ".img");
+        try {
+            KnowledgeImage.write(program, file);
+            return KnowledgeImage.load(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static Set<String> answers(Program p, String query, String var) {
+        Set<String> out = new TreeSet<>();
+        new Solver(p, new Builtins()).solve(QueryParser.parse(query), s -> out.add(s.get(var).toSource()));
+        return out;
+    }
+
+    @Test
+    public void linkReportsTheSameProblemsForAnImageAsForItsSource() throws IOException {
+        List<String> fromSource = source(SOURCE).link(new Builtins());
+        List<String> fromImage = roundTrip(source(SOURCE)).link(new Builtins());
+        assertEquals(3, fromSource.size());
+        assertEquals(new TreeSet<>(fromSource), new TreeSet<>(fromImage));
+    }
+
+    @Test
+    public void linkDecodesOnlyPredicatesWithUnresolvedCalls() throws IOException {
+        Program image = roundTrip(source(SOURCE));
+        image.link(new Builtins());
+        Map<String, Predicate> byName = new HashMap<>();
+        for (Predicate p : image.predicates()) byName.put(p.name() + "/" + p.arity(), p);
+        assertNotNull(byName.get("ancestor/2").imageCalls());
+        assertNull(byName.get("p/1").imageCalls());
+        assertNull(byName.get("r/1").imageCalls());
+        assertNull(byName.get("s/1").imageCalls());
+    }
+
+    @Test
+    public void linkRechecksImageCallsAgainstLaterDefinitions() throws IOException {
+        Program image = roundTrip(source(SOURCE));
+        image.consult("q(\"ann\").");
+        List<String> problems = image.link(new Builtins());
+        assertEquals(1, problems.size());
+        assertTrue(problems.get(0), problems.get(0).startsWith("Unknown builtin NOPE"));
+    }
+
+    @Test
+    public void imageAnswersLikeItsSource() throws IOException {
+        Program image = roundTrip(source(SOURCE));
+        assertEquals(answers(source(SOURCE), "ancestor(\"ann\", Y).", "Y"), answers(image, "ancestor(\"ann\", Y).", "Y"));
+        assertEquals(2, answers(image, "ancestor(\"ann\", Y).", "Y").size());
+    }
+}
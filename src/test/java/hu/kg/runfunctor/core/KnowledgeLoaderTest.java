@@ -0,0 +1,79 @@
+package hu.kg.runfunctor.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class KnowledgeLoaderTest {
+
+    private static final String KB = String.join("\n",
+        ":- relation parent/2 \"parent.csv\".",
+        "ancestor(X, Y) :- parent(X, Y).",
+        "ancestor(X, Y) :- parent(X, Z), ancestor(Z, Y).",
+        "");
+
+    private static Set<String> answers(Program p, String query, String var) {
+        Set<String> out = new TreeSet<>();
+        new Solver(p, new Builtins()).solve(QueryParser.parse(query), s -> out.add(s.get(var).toSource()));
+        return out;
+    }
+
+    // A directory holding kb.rfun and the parent.csv it names.
+    private static Path kbDir() throws IOException {
+        Path dir = Files.createTempDirectory("kb");
+        Files.writeString(dir.resolve("kb.rfun"), KB);
+        Files.writeString(dir.resolve("parent.csv"), "ann,bob\nbob,cid\n");
+        return dir;
+    }
+
+    private static void delete(Path dir) throws IOException {
+        Files.delete(dir.resolve("kb.rfun"));
+        Files.delete(dir.resolve("parent.csv"));
+        Files.delete(dir);
+    }
+
+    @Test
+    public void relationFileIsResolvedAgainstTheKnowledgeBaseDirectory() throws IOException {
+        Path dir = kbDir();
+        try {
+            Program loaded = new Program();
+            KnowledgeLoader.load(loaded, dir.resolve("kb.rfun"));
+            assertEquals(Set.of("\"bob\"", "\"cid\""), answers(loaded, "ancestor(\"ann\", Y).", "Y"));
+
+            Program parsed = new Program();
+            ClauseParser.parseFile(dir.resolve("kb.rfun"), parsed);
+            assertEquals(Set.of("\"bob\"", "\"cid\""), answers(parsed, "ancestor(\"ann\", Y).", "Y"));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void readerSourceTakesAnExplicitBase() throws IOException {
+        Path dir = kbDir();
+        try {
+            Program p = new Program();
+            KnowledgeLoader.load(p, new StringReader(KB), ForkJoinPool.commonPool(), 2, dir);
+            assertEquals(Set.of("\"bob\""), answers(p, "parent(\"ann\", Y).", "Y"));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void clausesKeepSourceOrderAcrossChunks() throws IOException {
+        StringBuilder kb = new StringBuilder();
+        for (int i = 0; i < 100; i++) kb.append("n(\"").append(i).append("\").\n");
+        Program p = new Program();
+        assertEquals(100, KnowledgeLoader.load(p, new StringReader(kb.toString()), ForkJoinPool.commonPool(), 7));
+        List<Clause> clauses = p.clauses("n", 1);
+        for (int i = 0; i < 100; i++) assertEquals("\"" + i + "\"", clauses.get(i).head().args().get(0).toSource());
+    }
+}
@@ -0,0 +1,104 @@
+package hu.kg.runfunctor.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.CharBuffer;
+import java.util.*;
+
+import org.junit.Test;
+
+public class LexerTest {
+
+    // Each token as TYPE(text), up to the end of the input.
+    private static List<String> tokens(CharSequence in) {
+        Lexer lex = new Lexer(in);
+        List<String> out = new ArrayList<>();
+        while (lex.next() != TokType.EOF) out.add(lex.toString());
+        return out;
+    }
+
+    private static List<String> texts(CharSequence in) {
+        Lexer lex = new Lexer(in);
+        List<String> out = new ArrayList<>();
+        while (lex.next() != TokType.EOF) out.add(lex.text());
+        return out;
+    }
+
+    private static void assertRejected(String in, String message) {
+        try {
+            tokens(in);
+            fail("accepted: " + in);
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    @Test
+    public void punctuationAndOperators() {
+        assertEquals(List.of("NAME(p)", "LPAREN(()", "NAME(X)", "RPAREN())", "MINUS(:-)", "NAME(q)", "SEMI(;)",
+                "BANG(!)", "NAME(F)", "LPAREN(()", "RPAREN())", "ARROW(->)", "NAME(*y)", "COMMA(,)", "DOT(.)"),
+            tokens("p(X) :- q ; !F()->*y, ."));
+        assertEquals(List.of("NAME(ancestor)", "SLASH(/)", "NUMBER(2)", "NAME(x_1)", "THING(a b)"),
+            tokens("ancestor/2 x_1 @a b@"));
+    }
+
+    // "->" is one token; a '-' on its own is not a token at all.
+    @Test
+    public void arrowIsNotAMinus() {
+        assertEquals(List.of("NAME(a)", "ARROW(->)", "NAME(b)"), tokens("a->b"));
+        assertEquals(List.of("NAME(a)", "ARROW(->)", "NAME(b)"), tokens("a -> b"));
+        assertRejected("a - b", "Unexpected char: - at line 1, offset 2");
+        assertRejected("a\n- > b", "Unexpected char: - at line 2");
+        assertRejected("a -", "Unexpected char: -");
+        assertRejected("a --> b", "Unexpected char: -");
+    }
+
+    // A backslash keeps the next character; the text then goes through Util.unescapeString.
+    @Test
+    public void escapesInStrings() {
+        assertEquals(List.of("a\"b"), texts("\"a\\\"b\""));
+        assertEquals(List.of("say \"hi\""), texts("\"say \\\"hi\\\"\""));
+        assertEquals(List.of("n"), texts("\"\\n\""));
+        assertEquals(List.of("\\"), texts("\"\\\\\\\\\""));
+        assertEquals(List.of("plain", "a\"", "plain"), texts("\"plain\" \"a\\\"\" \"plain\""));
+        assertEquals(List.of("STRING(a,b // c)"), tokens("\"a,b // c\""));
+    }
+
+    @Test
+    public void commentsAreSkipped() {
+        assertEquals(List.of("a", "b", "c", "d"), texts("a // one\nb /* two\nlines */ c/**/d // end"));
+        assertEquals(List.of("a", "b"), texts("a /* x * / // */ b"));
+        assertEquals(List.of("a", "/", "b"), texts("a / b"));
+    }
+
+    @Test
+    public void unterminatedLiteralsAndCommentsReportTheirLine() {
+        assertRejected("p(\n\"abc", "Unterminated string literal at line 2");
+        assertRejected("p(\"a\\\"", "Unterminated string literal at line 1");
+        assertRejected("p(\n\n@abc", "Unterminated thing literal @...@ at line 3");
+        assertRejected("a /* never closed", "Unterminated comment /*...*/ at line 1");
+        assertRejected("a\n\n /* x\ny *", "Unterminated comment /*...*/ at line 3");
+        assertRejected("a\n#", "Unexpected char: # at line 2");
+    }
+
+    // Texts come from a small cache; they must be the slice's text even when slots collide.
+    @Test
+    public void cachedTextsEqualTheirSlices() {
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        assertEquals(List.of("Aa", "BB", "Aa", "BB", "AaBB", "BBAa"), texts("Aa BB Aa BB AaBB BBAa"));
+        assertEquals(List.of("Aa", "BB", "Aa"), texts("\"Aa\" \"BB\" \"Aa\""));
+        StringBuilder sb = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        Random rnd = new Random(1);
+        for (int i = 0; i < 20000; i++) {
+            String name = "n" + rnd.nextInt(6000);
+            expected.add(name);
+            sb.append(name).append(' ');
+        }
+        assertEquals(expected, texts(sb));
+        assertEquals(expected, texts(CharBuffer.wrap(sb.toString().toCharArray())));
+        assertEquals(expected, texts(sb.toString()));
+    }
+}
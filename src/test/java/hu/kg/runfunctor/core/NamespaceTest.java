@@ -0,0 +1,73 @@
+package hu.kg.runfunctor.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.*;
+
+import org.junit.Test;
+
+public class NamespaceTest {
+
+    @Test
+    public void variablesOfALaterNamespaceAreRenamedOnCollision() {
+        assertEquals("p(X, Y).\n\nq(X_1_, Z).\n\nr(X_2_, Y_3_).",
+            Namespace.renameCollidingVariables("p(X, Y).\n\nq(X, Z).\n\nr(X, Y)."));
+    }
+
+    @Test
+    public void newNamesDoNotContainDoubleUnderscores() {
+        String out = Namespace.renameCollidingVariables("p(X_, Y).\n\nq(X_, Y).");
+        assertEquals("p(X_, Y).\n\nq(X_1_, Y_2_).", out);
+        assertFalse(out.contains("__"));
+    }
+
+    // A name of the generated form written in the input is renamed, so it cannot meet a new one.
+    @Test
+    public void generatedFormIsReserved() {
+        assertEquals("p(X_1_1_, X).\n\nq(X_2_).",
+            Namespace.renameCollidingVariables("p(X_1_, X).\n\nq(X)."));
+        assertEquals("p(X1_, X_1).", Namespace.renameCollidingVariables("p(X1_, X_1)."));
+    }
+
+    @Test
+    public void quotedTextAndCommentsAreLeftAlone() {
+        String in = "p(X).\n\nq(\"X\", @X@, X). % X\n";
+        assertEquals("p(X).\n\nq(\"X\", @X@, X_1_). % X\n", Namespace.renameCollidingVariables(in));
+    }
+
+    @Test
+    public void renamedQueryVariablesSurviveFilterQueryVars() {
+        Map<String, Term> solution = new LinkedHashMap<>();
+        solution.put("X_1_", Constant.of("a"));
+        solution.put("X__12", Constant.of("b"));
+        assertEquals(Set.of("X_1_"), Solver.filterQueryVars(solution).keySet());
+    }
+
+    // A knowledge base and, in a last namespace, a query whose variables all collide with the
+    // rules' names: after renaming, solving the query still reports every one of them.
+    @Test
+    public void renamedQueryVariablesReachTheAnswers() {
+        String kb = String.join("\n",
+            "edge(\"a\", \"b\").", "edge(\"b\", \"c\").", "",
+            "path(X, Y) :- edge(X, Y).", "path(X, Y) :- edge(X, Z), path(Z, Y).", "",
+            "path(X, Y), edge(Y, Z), !CONCAT(X, Z)->*xz.");
+        String[] parts = Namespace.renameCollidingVariables(kb).split("\n\n");
+        Program p = new Program();
+        for (int i = 0; i < parts.length - 1; i++) {
+            for (String line : parts[i].split("\n")) p.consult(line);
+        }
+        String query = parts[parts.length - 1];
+        assertEquals("path(X_1_, Y_2_), edge(Y_2_, Z_3_), !CONCAT(X_1_, Z_3_)->*xz.", query);
+        List<Map<String, Term>> answers = new ArrayList<>();
+        new Solver(p, new Builtins()).solve(QueryParser.parse(query),
+            s -> answers.add(Solver.filterQueryVars(new LinkedHashMap<>(s))));
+        assertEquals(1, answers.size());
+        Map<String, Term> answer = answers.get(0);
+        assertEquals(Set.of("X_1_", "Y_2_", "Z_3_", "*xz"), answer.keySet());
+        assertEquals("\"a\"", answer.get("X_1_").toSource());
+        assertEquals("\"b\"", answer.get("Y_2_").toSource());
+        assertEquals("\"c\"", answer.get("Z_3_").toSource());
+        assertEquals("\"ac\"", answer.get("*xz").toSource());
+    }
+}
@@ -0,0 +1,71 @@
+package hu.kg.runfunctor.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.*;
+
+import org.junit.Test;
+
+public class OccursCheckTest {
+
+    // cyc/1 unifies X with f(X) through eq/2's repeated head variable; its own Z stays unbound,
+    // so a cyclic solution is never resolved for printing.
+    private static Program program() {
+        Program p = new Program();
+        p.consult("eq(A, A).");
+        p.consult("cyc(Z) :- eq(X, f(X)).");
+        p.consult("wrap(X, f(X, Y)).");
+        return p;
+    }
+
+    private static int count(Program p, OccursCheck mode, String query) {
+        Solver s = new Solver(p, new Builtins());
+        s.setOccursCheck(mode);
+        int[] n = {0};
+        s.solve(QueryParser.parse(query), sol -> n[0]++);
+        return n[0];
+    }
+
+    @Test
+    public void fullRejectsCyclicBindings() {
+        assertEquals(0, count(program(), OccursCheck.FULL, "cyc(Z)."));
+        assertEquals(0, count(program(), OccursCheck.FULL, "eq(X, f(X))."));
+    }
+
+    @Test
+    public void noneAcceptsCyclicBindings() {
+        assertEquals(1, count(program(), OccursCheck.NONE, "cyc(Z)."));
+    }
+
+    // X reaches eq/2's second A as a bound repeated head variable, not a first occurrence.
+    @Test
+    public void safeChecksWhatIsNotAFirstOccurrence() {
+        assertEquals(0, count(program(), OccursCheck.SAFE, "cyc(Z)."));
+        assertEquals(0, count(program(), OccursCheck.SAFE, "eq(X, f(X))."));
+        assertEquals(1, count(program(), OccursCheck.SAFE, "wrap(A, B)."));
+        assertEquals(0, count(program(), OccursCheck.SAFE, "wrap(A, A)."));
+    }
+
+    @Test
+    public void predicateModeOverridesTheQueryMode() {
+        Program p = program();
+        p.setOccursCheck("eq", 2, OccursCheck.NONE);
+        assertEquals(1, count(p, OccursCheck.FULL, "cyc(Z)."));
+        assertEquals(1, count(p, OccursCheck.SAFE, "cyc(Z)."));
+        p.setOccursCheck("eq", 2, OccursCheck.FULL);
+        assertEquals(0, count(p, OccursCheck.NONE, "cyc(Z)."));
+        p.setOccursCheck("eq", 2, null);
+        assertEquals(1, count(p, OccursCheck.NONE, "cyc(Z)."));
+        assertEquals(0, count(p, OccursCheck.FULL, "cyc(Z)."));
+    }
+
+    // The override holds for clauses added after it is set, too.
+    @Test
+    public void predicateModeCoversLaterClauses() {
+        Program p = new Program();
+        p.setOccursCheck("eq", 2, OccursCheck.NONE);
+        p.consult("eq(A, A).");
+        p.consult("cyc(Z) :- eq(X, f(X)).");
+        assertEquals(1, count(p, OccursCheck.FULL, "cyc(Z)."));
+    }
+}
@@ -0,0 +1,89 @@
+package hu.kg.runfunctor.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+public class OrParallelTest {
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+    @AfterClass
+    public static void shutdown() {
+        POOL.shutdown();
+    }
+
+    // A random graph on 30 nodes, with rules that branch at every level.
+    private static Program program(long seed) {
+        Random rnd = new Random(seed);
+        Program p = new Program();
+        for (int i = 0; i < 60; i++) {
+            p.consult("edge(\"n" + rnd.nextInt(30) + "\", \"n" + rnd.nextInt(30) + "\").");
+        }
+        p.consult("path2(X, Z) :- edge(X, Y), edge(Y, Z).");
+        p.consult("path3(X, W) :- path2(X, Z), edge(Z, W).");
+        p.consult("hop(X, Y) :- edge(X, Y).");
+        p.consult("hop(X, Y) :- path2(X, Y).");
+        p.consult("hop(X, Y) :- path3(X, Y).");
+        p.consult("firstHop(X, Y) :- edge(X, Y), !.");
+        p.consult("either(X, Y) :- ( edge(X, Y) ; path2(Y, X) ).");
+        return p;
+    }
+
+    private static List<String> sequential(Program p, String query) {
+        List<String> out = new ArrayList<>();
+        new Solver(p, new Builtins()).solve(QueryParser.parse(query), s -> out.add(new TreeMap<>(s).toString()));
+        return out;
+    }
+
+    private static List<String> parallel(Program p, String query, int forkDepth, boolean ordered) {
+        List<String> out = new ArrayList<>();
+        new Solver(p, new Builtins()).solveParallel(QueryParser.parse(query),
+            s -> out.add(new TreeMap<>(s).toString()), POOL, forkDepth, ordered);
+        return out;
+    }
+
+    private static final String[] QUERIES = {
+        "hop(X, Y).", "path3(X, Y).", "hop(\"n3\", Y), edge(Y, Z).", "firstHop(X, Y).", "either(X, Y).",
+    };
+
+    @Test
+    public void orderedModeGivesTheSequentialSolutionsInOrder() {
+        for (long seed = 0; seed < 5; seed++) {
+            Program p = program(seed);
+            for (String q : QUERIES) {
+                for (int depth : new int[] {0, 1, 3, 8}) {
+                    assertEquals(q + " depth " + depth, sequential(p, q), parallel(p, q, depth, true));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void unorderedModeGivesTheSequentialSolutions() {
+        for (long seed = 0; seed < 5; seed++) {
+            Program p = program(seed);
+            for (String q : QUERIES) {
+                List<String> expected = sequential(p, q);
+                List<String> got = parallel(p, q, 4, false);
+                Collections.sort(expected);
+                Collections.sort(got);
+                assertEquals(q, expected, got);
+            }
+        }
+    }
+
+    @Test
+    public void tabledPredicatesAreAnsweredAsSequentially() {
+        Program p = program(7);
+        p.consult(":- table reach/2.");
+        p.consult("reach(X, Y) :- edge(X, Y).");
+        p.consult("reach(X, Y) :- reach(X, Z), edge(Z, Y).");
+        List<String> expected = sequential(p, "hop(X, Y), reach(Y, Z).");
+        assertEquals(expected, parallel(p, "hop(X, Y), reach(Y, Z).", 4, true));
+    }
+}
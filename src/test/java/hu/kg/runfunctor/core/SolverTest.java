@@ -0,0 +1,108 @@
+package hu.kg.runfunctor.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+public class SolverTest {
+
+    private static Program program(String... lines) {
+        Program p = new Program();
+        for (String line : lines) p.consult(line);
+        return p;
+    }
+
+    private static List<String> values(Program p, String query, String var) {
+        List<String> out = new ArrayList<>();
+        new Solver(p, new Builtins()).solve(QueryParser.parse(query), s -> out.add(s.get(var).toSource()));
+        return out;
+    }
+
+    private static Program chain(int n) {
+        Program p = new Program();
+        for (int i = 0; i < n; i++) p.consult("parent(\"n" + i + "\", \"n" + (i + 1) + "\").");
+        p.consult("ancestor(X, Y) :- parent(X, Y).");
+        p.consult("ancestor(X, Y) :- parent(X, Z), ancestor(Z, Y).");
+        return p;
+    }
+
+    @Test
+    public void solutionsComeInSearchOrder() {
+        Program p = program(
+            "m(\"1\").", "m(\"2\").",
+            "n(\"a\").", "n(\"b\").",
+            "pair(X, Y) :- m(X), n(Y).",
+            "pair(\"0\", \"z\").");
+        List<String> out = new ArrayList<>();
+        new Solver(p, new Builtins()).solve(QueryParser.parse("pair(X, Y)."),
+            s -> out.add(s.get("X").toSource() + s.get("Y").toSource()));
+        assertEquals(List.of("\"1\"\"a\"", "\"1\"\"b\"", "\"2\"\"a\"", "\"2\"\"b\"", "\"0\"\"z\""), out);
+    }
+
+    @Test
+    public void deepRecursionRunsInConstantStack() {
+        int n = 100_000;
+        Program p = chain(n);
+        List<String> all = values(p, "ancestor(\"n0\", Y).", "Y");
+        assertEquals(n, all.size());
+        assertEquals("\"n1\"", all.get(0));
+        assertEquals("\"n" + n + "\"", all.get(n - 1));
+        assertTrue(new Solver(p, new Builtins()).solveFirst(QueryParser.parse("ancestor(\"n0\", \"n" + n + "\").")).isPresent());
+    }
+
+    @Test
+    public void longConjunctionsAreSolved() {
+        Program p = program("a(\"x\").");
+        String query = IntStream.range(0, 20_000).mapToObj(i -> "a(X" + i + ")")
+            .collect(Collectors.joining(", ", "", "."));
+        Optional<Map<String, Term>> first = new Solver(p, new Builtins()).solveFirst(QueryParser.parse(query));
+        assertTrue(first.isPresent());
+        assertEquals("\"x\"", first.get().get("X19999").toSource());
+    }
+
+    @Test
+    public void solveFirstStopsAtTheFirstSolution() {
+        Program p = program("m(\"1\").", "m(\"2\").");
+        Solver s = new Solver(p, new Builtins());
+        assertEquals("\"1\"", s.solveFirst(QueryParser.parse("m(X).")).get().get("X").toSource());
+        assertFalse(s.solveFirst(QueryParser.parse("m(\"3\").")).isPresent());
+        assertFalse(s.solveFirst(QueryParser.parse("none(X).")).isPresent());
+    }
+
+    // The first solution is resolved when returned, so it does not hold on to the search.
+    @Test
+    public void solveFirstResultOutlivesTheSearch() {
+        Program p = program("m(\"1\").", "m(\"2\").", "pair(X, f(X)).");
+        Solver s = new Solver(p, new Builtins());
+        Map<String, Term> first = s.solveFirst(QueryParser.parse("m(X), pair(X, Y).")).get();
+        assertTrue(((SolutionView) first).isFrozen());
+        Map<String, Term> second = s.solveFirst(QueryParser.parse("m(\"2\"), pair(\"2\", Y).")).get();
+        s.solve(QueryParser.parse("m(X), pair(Y, X)."), sol -> {});
+        assertEquals("\"1\"", first.get("X").toSource());
+        assertEquals("f(\"1\")", first.get("Y").toSource());
+        assertEquals("f(\"2\")", second.get("Y").toSource());
+    }
+
+    @Test
+    public void solutionsArePulledLazily() {
+        Program p = chain(1000);
+        try (Solutions it = new Solver(p, new Builtins()).solutions(QueryParser.parse("ancestor(\"n0\", Y)."))) {
+            assertEquals(List.of("\"n21\"", "\"n22\""), it.stream().skip(20).limit(2)
+                .map(s -> s.get("Y").toSource()).collect(Collectors.toList()));
+        }
+    }
+
+    // Backtracking restores an overridden variable to its value at the choicepoint.
+    @Test
+    public void backtrackingRestoresOverriddenVariables() {
+        Program p = program("m(\"1\").", "m(\"2\").", "m(\"3\").");
+        assertEquals(List.of("\"s1\"", "\"s2\"", "\"s3\""),
+            values(p, "!CONCAT(\"s\", \"\")->*x, m(C), !CONCAT(*x, C)->*x.", "*x"));
+    }
+}
@@ -0,0 +1,104 @@
+package hu.kg.runfunctor.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.*;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class SymbolsTest {
+
+    @After
+    public void hashConsingOff() {
+        Symbols.setHashConsing(false);
+    }
+
+    // The first argument of the query's first goal, as the parser built it.
+    private static Term arg(String query) {
+        return ((Functor) QueryParser.parse(query).get(0)).args().get(0);
+    }
+
+    private static Term clauseArg(String clause) {
+        return ClauseParser.parse(clause).head().args().get(0);
+    }
+
+    private static final String GROUND = "p(f(\"a\", g(\"b\", @t@), h(\"c\")), \"d\").";
+
+    @Test
+    public void groundCompoundsAreSharedWhileHashConsing() {
+        Symbols.setHashConsing(true);
+        Term a = arg(GROUND);
+        assertSame(a, arg(GROUND));
+        assertSame(a, clauseArg(GROUND));
+        assertSame(((Functor) a).args().get(1), arg("q(g(\"b\", @t@))."));
+    }
+
+    @Test
+    public void groundCompoundsAreEqualButDistinctWhenNotHashConsing() {
+        Term a = arg(GROUND);
+        Term b = arg(GROUND);
+        assertNotSame(a, b);
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+    }
+
+    @Test
+    public void nonGroundCompoundsAreNeverShared() {
+        Symbols.setHashConsing(true);
+        Term a = arg("p(f(g(\"z\"), X)).");
+        int before = Symbols.compoundCount();
+        Term b = arg("p(f(g(\"z\"), X)).");
+        assertNotSame(a, b);
+        assertFalse(a.isGround());
+        assertSame(((Functor) a).args().get(0), ((Functor) b).args().get(0)); // g("z") is ground
+        assertNotSame(arg("p(f(X, \"a\"))."), arg("p(f(X, \"a\"))."));
+        assertEquals(before, Symbols.compoundCount());
+    }
+
+    // equals and hashCode agree whichever side is canonical, and however the term was built.
+    @Test
+    public void equalsAndHashCodeAgreeAcrossCanonicalAndPlainTerms() {
+        Term plain = arg(GROUND);
+        Term built = new Functor("f", List.of(Constant.of("a"),
+            new Functor("g", List.of(Constant.of("b"), Thing.of("t"))), new Functor("h", List.of(new Constant("c")))));
+        Symbols.setHashConsing(true);
+        Term canonical = arg(GROUND);
+        Term other = arg("p(f(\"a\", g(\"b\", @t@), h(\"x\")), \"d\").");
+        Term[] same = {plain, built, canonical};
+        for (Term x : same) {
+            for (Term y : same) {
+                assertTrue(x + " " + y, x.equals(y));
+                assertEquals(x.hashCode(), y.hashCode());
+            }
+            assertFalse(x.equals(other));
+            assertFalse(other.equals(x));
+        }
+        Set<Term> set = new HashSet<>(List.of(plain, built));
+        assertTrue(set.contains(canonical));
+        assertEquals(1, set.size());
+    }
+
+    // Values a builtin computes while solving stay out of the process-wide table.
+    @Test
+    public void builtinResultsAreNotInterned() {
+        Program p = new Program();
+        p.consult("m(\"1\").");
+        p.consult("m(\"2\").");
+        Solver s = new Solver(p, new Builtins());
+        List<Term> results = new ArrayList<>();
+        int before = Symbols.atomCount();
+        for (int i = 0; i < 100; i++) {
+            s.solve(QueryParser.parse("m(X), !CONCAT(\"v" + i + "-\", X)->*y."), sol -> results.add(sol.get("*y")));
+        }
+        assertEquals(200, results.size());
+        assertEquals(100, Symbols.atomCount() - before); // the queries' own "v<i>-" literals only
+        assertEquals(Constant.of("v7-2"), results.get(15));
+        assertEquals(results.get(15), Constant.of("v7-2"));
+        assertEquals(Constant.of("v7-2").hashCode(), results.get(15).hashCode());
+    }
+}
@@ -0,0 +1,106 @@
+package hu.kg.runfunctor.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.*;
+
+import org.junit.Test;
+
+public class TablingTest {
+
+    // Directed graph on nodes 0..n-1: a random tree below node 0 plus n random edges (cycles included).
+    private static List<int[]> randomGraph(int n, long seed) {
+        Random rnd = new Random(seed);
+        List<int[]> edges = new ArrayList<>();
+        for (int i = 1; i < n; i++) edges.add(new int[] {rnd.nextInt(i), i});
+        for (int i = 0; i < n; i++) edges.add(new int[] {rnd.nextInt(n), rnd.nextInt(n)});
+        return edges;
+    }
+
+    private static Program program(List<int[]> edges, String... rules) {
+        Program p = new Program();
+        for (int[] e : edges) p.consult("edge(\"n" + e[0] + "\", \"n" + e[1] + "\").");
+        for (String r : rules) p.consult(r);
+        return p;
+    }
+
+    private static Set<String> answers(Program p, String query, String var) {
+        Set<String> out = new TreeSet<>();
+        new Solver(p, new Builtins()).solve(QueryParser.parse(query), s -> out.add(s.get(var).toSource()));
+        return out;
+    }
+
+    // Nodes reachable from start in one or more steps whose path length has the given parity
+    // (parity < 0: any length), by breadth-first search over (node, parity) states.
+    private static Set<String> reachable(List<int[]> edges, int start, int parity) {
+        Map<Integer, List<Integer>> next = new HashMap<>();
+        for (int[] e : edges) next.computeIfAbsent(e[0], k -> new ArrayList<>()).add(e[1]);
+        Set<String> out = new TreeSet<>();
+        Set<Long> seen = new HashSet<>();
+        Deque<long[]> queue = new ArrayDeque<>();
+        queue.add(new long[] {start, 0});
+        while (!queue.isEmpty()) {
+            long[] s = queue.poll();
+            for (int m : next.getOrDefault((int) s[0], List.of())) {
+                int len = (int) (s[1] % 2) + 1;
+                if (parity < 0 || len % 2 == parity) out.add("\"n" + m + "\"");
+                long key = m * 2L + (parity < 0 ? 0 : len % 2);
+                if (seen.add(key)) queue.add(new long[] {m, parity < 0 ? 0 : len % 2});
+            }
+        }
+        return out;
+    }
+
+    @Test
+    public void leftRecursionOnCyclicGraphsMatchesReachability() {
+        for (long seed = 0; seed < 300; seed++) {
+            List<int[]> g = randomGraph(3 + (int) (seed % 20), seed);
+            Program p = program(g,
+                ":- table path/2.",
+                "path(X, Y) :- path(X, Z), edge(Z, Y).",
+                "path(X, Y) :- edge(X, Y).");
+            assertEquals("seed " + seed, reachable(g, 0, -1), answers(p, "path(\"n0\", Y).", "Y"));
+        }
+    }
+
+    @Test
+    public void rightRecursionOnCyclicGraphsMatchesReachability() {
+        for (long seed = 0; seed < 300; seed++) {
+            List<int[]> g = randomGraph(3 + (int) (seed % 20), seed);
+            Program p = program(g,
+                ":- table path/2.",
+                "path(X, Y) :- edge(X, Z), path(Z, Y).",
+                "path(X, Y) :- edge(X, Y).");
+            int start = (int) (seed % 3);
+            assertEquals("seed " + seed, reachable(g, start, -1), answers(p, "path(\"n" + start + "\", Y).", "Y"));
+        }
+    }
+
+    // odd/2 and even/2 call each other: paths of odd and of even length.
+    @Test
+    public void mutualRecursionOnCyclicGraphsMatchesReachability() {
+        for (long seed = 0; seed < 300; seed++) {
+            List<int[]> g = randomGraph(3 + (int) (seed % 20), seed);
+            Program p = program(g,
+                ":- table odd/2, even/2.",
+                "odd(X, Y) :- edge(X, Y).",
+                "odd(X, Y) :- even(X, Z), edge(Z, Y).",
+                "even(X, Y) :- odd(X, Z), edge(Z, Y).");
+            assertEquals("odd, seed " + seed, reachable(g, 0, 1), answers(p, "odd(\"n0\", Y).", "Y"));
+            assertEquals("even, seed " + seed, reachable(g, 0, 0), answers(p, "even(\"n0\", Y).", "Y"));
+        }
+    }
+
+    @Test
+    public void answersOfADagAreNotRepeated() {
+        List<int[]> g = List.of(new int[] {0, 1}, new int[] {0, 2}, new int[] {1, 3}, new int[] {2, 3});
+        Program p = program(g,
+            ":- table path/2.",
+            "path(X, Y) :- edge(X, Y).",
+            "path(X, Y) :- edge(X, Z), path(Z, Y).");
+        List<String> all = new ArrayList<>();
+        new Solver(p, new Builtins()).solve(QueryParser.parse("path(\"n0\", Y)."), s -> all.add(s.get("Y").toSource()));
+        assertEquals(3, all.size());
+        assertEquals(reachable(g, 0, -1), new TreeSet<>(all));
+    }
+}
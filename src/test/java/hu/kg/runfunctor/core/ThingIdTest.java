@@ -0,0 +1,99 @@
+package hu.kg.runfunctor.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+public class ThingIdTest {
+
+    private static final long[] BITS = {0, 1, 63, 64, -1, Long.MIN_VALUE, Long.MAX_VALUE, 0x123456789abcdefL};
+
+    private static Thing parsed(String source) {
+        return (Thing) ((Functor) QueryParser.parse("p(" + source + ").").get(0)).args().get(0);
+    }
+
+    private static void assertSameThing(Thing a, Thing b) {
+        assertTrue(a + " " + b, a.equals(b));
+        assertTrue(b + " " + a, b.equals(a));
+        assertEquals(a.hashCode(), b.hashCode());
+    }
+
+    // A packed id prints as 11 base-64 digits and is the same Thing as what reads back from them.
+    @Test
+    public void packedThingEqualsItsParsedForm() {
+        Random rnd = new Random(3);
+        List<Long> bits = new ArrayList<>();
+        for (long b : BITS) bits.add(b);
+        for (int i = 0; i < 1000; i++) bits.add(rnd.nextLong());
+        for (long b : bits) {
+            int hash = Thing.ofBits(b).hashCode(); // before anything prints it
+            Thing packed = Thing.ofBits(b);
+            assertEquals(11, packed.content().length());
+            Thing read = parsed(packed.toSource());
+            assertEquals(hash, read.hashCode());
+            assertSameThing(packed, read);
+            assertSameThing(Thing.ofBits(b), new Thing(packed.content()));
+            assertSameThing(Thing.ofBits(b), Thing.ofBits(b));
+        }
+        assertFalse(Thing.ofBits(1).equals(Thing.ofBits(2)));
+        assertFalse(Thing.ofBits(1).equals(parsed(Thing.ofBits(2).toSource())));
+    }
+
+    // Has that many threads take n ids each from g at the same time; returns their printed forms.
+    private static List<String> draw(ThingIdGenerator g, int threads, int n) throws InterruptedException {
+        List<String> all = Collections.synchronizedList(new ArrayList<>());
+        Thread[] ts = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            ts[t] = new Thread(() -> {
+                List<String> mine = new ArrayList<>(n);
+                for (int i = 0; i < n; i++) mine.add(g.next().content());
+                all.addAll(mine);
+            });
+            ts[t].start();
+        }
+        for (Thread t : ts) t.join();
+        return all;
+    }
+
+    // Each thread crosses several 1024-id blocks.
+    @Test
+    public void sequenceIdsAreUniqueAcrossThreadsAndBlocks() throws InterruptedException {
+        for (boolean packed : new boolean[] {true, false}) {
+            List<String> ids = draw(ThingIdGenerator.sequence(0, packed), 8, 5000);
+            assertEquals(40000, new HashSet<>(ids).size());
+            Set<String> expected = new HashSet<>();
+            for (long i = 0; i < 8 * 5 * 1024; i++) expected.add(Thing.render(i));
+            assertTrue(expected.containsAll(ids));
+        }
+        List<String> wrapping = draw(ThingIdGenerator.sequence(-3000, true), 4, 2000);
+        assertEquals(8000, new HashSet<>(wrapping).size());
+    }
+
+    @Test
+    public void splitRandomIdsDoNotCollide() throws InterruptedException {
+        for (boolean packed : new boolean[] {true, false}) {
+            ThingIdGenerator g = ThingIdGenerator.splittableRandom(packed);
+            Set<String> ids = ConcurrentHashMap.newKeySet();
+            ids.addAll(draw(g, 8, 25000));
+            ids.addAll(draw(g, 8, 25000)); // new threads split new generators off the same root
+            assertEquals(400000, ids.size());
+        }
+    }
+
+    @Test
+    public void freshUsesTheCurrentGenerator() {
+        ThingIdGenerator before = Thing.idGenerator();
+        try {
+            Thing.setIdGenerator(ThingIdGenerator.sequence(42, true));
+            assertSameThing(Thing.ofBits(42), Thing.fresh());
+            assertSameThing(parsed("@" + Thing.render(43) + "@"), Thing.fresh());
+        } finally {
+            Thing.setIdGenerator(before);
+        }
+    }
+}